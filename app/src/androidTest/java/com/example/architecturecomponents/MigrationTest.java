@@ -0,0 +1,409 @@
+package com.example.architecturecomponents;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.room.Room;
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks each migration in {@link NoteMigrations} against the schemas exported to app/schemas,
+ * and that notes written by older versions survive the upgrade.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigrationTest {
+    private static final String TEST_DB = "migration-test";
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(InstrumentationRegistry.getInstrumentation(),
+            NoteDatabase.class.getCanonicalName(), new FrameworkSQLiteOpenHelperFactory());
+
+    @Test
+    public void migrate1To2() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 1);
+        insertNote(db, "Title", "Description", 4);
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 2, true, NoteMigrations.MIGRATION_1_2);
+
+        assertNote(db, "Title", "Description", 4);
+        assertIndexExists(db, "index_note_table_priority_id");
+        db.close();
+    }
+
+    @Test
+    public void migrate2To3() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 2);
+        insertNote(db, "Shopping", "Milk and bread", 2);
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 3, true, NoteMigrations.MIGRATION_2_3);
+
+        // Existing notes are indexed by the rebuild, new ones by the sync triggers.
+        assertSearchCount(db, "bread*", 1);
+        insertNote(db, "Bread recipe", "Flour", 1);
+        assertSearchCount(db, "bread*", 2);
+        db.close();
+    }
+
+    @Test
+    public void migrate3To4() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 3);
+        insertNote(db, "Title", "Description", 5);
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 4, true, NoteMigrations.MIGRATION_3_4);
+
+        assertNote(db, "Title", "Description", 5);
+        Cursor cursor = db.query("SELECT updatedAt FROM note_table");
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(0, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+        db.close();
+    }
+
+    @Test
+    public void migrate4To5() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 4);
+        ContentValues values = new ContentValues();
+        values.put("title", "Title");
+        values.put("description", "Description");
+        values.put("priority", 3);
+        values.put("updatedAt", 10);
+        db.insert("note_table", SQLiteDatabase.CONFLICT_FAIL, values);
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 5, true, NoteMigrations.MIGRATION_4_5);
+
+        // Existing notes are not deleted, and the list index now starts with deletedAt.
+        assertNote(db, "Title", "Description", 3);
+        Cursor cursor = db.query("SELECT deletedAt FROM note_table");
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(0, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+        assertIndexExists(db, "index_note_table_deletedAt_priority_id");
+        db.close();
+    }
+
+    @Test
+    public void migrate5To6() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 5);
+        for (String title : new String[]{"banana", "Apple", "cherry"}) {
+            ContentValues values = new ContentValues();
+            values.put("title", title);
+            values.put("description", "Description");
+            values.put("priority", 3);
+            values.put("updatedAt", 10);
+            values.put("deletedAt", 0);
+            db.insert("note_table", SQLiteDatabase.CONFLICT_FAIL, values);
+        }
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 6, true, NoteMigrations.MIGRATION_5_6);
+
+        // The rebuilt table keeps the notes, sorts titles ignoring case and still feeds the search table.
+        Cursor cursor = db.query("SELECT title, createdAt FROM note_table ORDER BY title");
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Apple", cursor.getString(0));
+            assertEquals(10, cursor.getLong(1));
+            assertTrue(cursor.moveToNext());
+            assertEquals("banana", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+        assertSearchCount(db, "cherry", 1);
+        assertIndexExists(db, "index_note_table_deletedAt_title_id");
+        assertIndexExists(db, "index_note_table_deletedAt_createdAt_id");
+        assertIndexExists(db, "index_note_table_deletedAt_updatedAt_id");
+        db.close();
+    }
+
+    @Test
+    public void migrate6To7() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 6);
+        StringBuilder longText = new StringBuilder("Recipe ");
+        while (longText.length() <= NoteBodies.LARGE_LENGTH) {
+            longText.append("flour and water ");
+        }
+        for (String description : new String[]{"Short", longText.toString()}) {
+            ContentValues values = new ContentValues();
+            values.put("title", "Title");
+            values.put("description", description);
+            values.put("priority", 3);
+            values.put("updatedAt", 10);
+            values.put("deletedAt", 0);
+            values.put("createdAt", 10);
+            db.insert("note_table", SQLiteDatabase.CONFLICT_FAIL, values);
+        }
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 7, true, NoteMigrations.MIGRATION_6_7);
+
+        // The short note stays as it was, the long one is cut down with its whole text in note_body.
+        Cursor cursor = db.query("SELECT n.description, n.bodyLength, b.data FROM note_table n "
+                + "LEFT JOIN note_body b ON b.noteId = n.id ORDER BY n.id");
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Short", cursor.getString(0));
+            assertEquals(0, cursor.getInt(1));
+            assertTrue(cursor.isNull(2));
+            assertTrue(cursor.moveToNext());
+            assertEquals(NoteBodies.INLINE_LENGTH, cursor.getString(0).length());
+            assertEquals(longText.length(), cursor.getInt(1));
+            assertEquals(longText.toString(), NoteBodies.decompress(cursor.getBlob(2)));
+        } finally {
+            cursor.close();
+        }
+        // The search index only covers the start of the long note now
+        assertSearchCount(db, "recipe", 1);
+        db.close();
+    }
+
+    @Test
+    public void migrate7To8() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 7);
+        insertV7Note(db, "Deleted", 2, 20);
+        for (int i = 0; i < 3; i++) {
+            insertV7Note(db, "Title", 5, 0);
+        }
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 8, true, NoteMigrations.MIGRATION_7_8);
+
+        // The existing notes are counted, leaving out the deleted one
+        assertPriorityCount(db, 5, 3);
+        assertPriorityCount(db, 2, 0);
+        // From then on the triggers keep count through inserts, moves, deletes and restores
+        insertV7Note(db, "New", 2, 0);
+        assertPriorityCount(db, 2, 1);
+        db.execSQL("UPDATE note_table SET priority = 7 WHERE title = 'New'");
+        assertPriorityCount(db, 2, 0);
+        assertPriorityCount(db, 7, 1);
+        db.execSQL("UPDATE note_table SET deletedAt = 30 WHERE priority = 5");
+        assertPriorityCount(db, 5, 0);
+        db.execSQL("UPDATE note_table SET deletedAt = 0 WHERE priority = 2");
+        assertPriorityCount(db, 2, 1);
+        db.execSQL("DELETE FROM note_table WHERE deletedAt > 0");
+        assertPriorityCount(db, 5, 0);
+        db.execSQL("DELETE FROM note_table");
+        assertPriorityCount(db, 2, 0);
+        assertPriorityCount(db, 7, 0);
+        db.close();
+    }
+
+    @Test
+    public void migrate8To9() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 8);
+        insertV7Note(db, "First", 2, 0);
+        insertV7Note(db, "Deleted", 3, 20);
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 9, true, NoteMigrations.MIGRATION_8_9);
+
+        // Every note gets its own guid, hasn't been synced, and is waiting to be pushed
+        Cursor cursor = db.query("SELECT COUNT(DISTINCT guid), COUNT(*), SUM(version) FROM note_table WHERE guid IS NOT NULL");
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(2, cursor.getInt(0));
+            assertEquals(2, cursor.getInt(1));
+            assertEquals(0, cursor.getInt(2));
+        } finally {
+            cursor.close();
+        }
+        cursor = db.query("SELECT COUNT(*) FROM note_changelog JOIN note_table USING (guid)");
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(2, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+        assertIndexExists(db, "index_note_table_guid");
+        db.close();
+    }
+
+    @Test
+    public void migrate9To10() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 9);
+        insertV9Note(db, "Milk", "Buy milk", 2);
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 10, true, NoteMigrations.MIGRATION_9_10);
+
+        // Room's update triggers are swapped for ones limited to the indexed columns
+        assertTriggerExists(db, "room_fts_content_sync_note_fts_BEFORE_UPDATE", false);
+        assertTriggerExists(db, "room_fts_content_sync_note_fts_AFTER_UPDATE", false);
+        assertTriggerExists(db, "note_fts_BEFORE_UPDATE", true);
+        assertTriggerExists(db, "note_fts_AFTER_UPDATE", true);
+        // Writing other columns leaves the index as it is, writing the title reindexes the note
+        db.execSQL("UPDATE note_table SET priority = 5, updatedAt = 20, version = 1");
+        assertSearchCount(db, "title:milk", 1);
+        db.execSQL("UPDATE note_table SET title = 'Bread'");
+        assertSearchCount(db, "title:milk", 0);
+        assertSearchCount(db, "title:bread", 1);
+        assertSearchCount(db, "milk", 1);
+        db.close();
+    }
+
+    @Test
+    public void migrate10To11() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 10);
+        insertV9Note(db, "Milk", "Buy milk", 2);
+        // A long description, stored cut down with its full text in note_body
+        StringBuilder description = new StringBuilder();
+        while (description.length() <= NoteBodies.LARGE_LENGTH) {
+            description.append("Pack the bags. ");
+        }
+        description.append("Zanzibar");
+        insertV9Note(db, "Trip", NoteBodies.inlinePart(description.toString()), 3);
+        db.execSQL("UPDATE note_table SET bodyLength = ? WHERE title = 'Trip'",
+                new Object[]{NoteBodies.bodyLength(description.toString())});
+        ContentValues body = new ContentValues();
+        body.put("noteId", 2);
+        body.put("data", NoteBodies.compress(description.toString()));
+        db.insert("note_body", SQLiteDatabase.CONFLICT_FAIL, body);
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 11, true, NoteMigrations.MIGRATION_10_11);
+
+        // The whole of the long description is indexed, and stays indexed when only the title is written
+        assertSearchCount(db, "milk", 1);
+        assertSearchCount(db, "zanzibar", 1);
+        db.execSQL("UPDATE note_table SET title = 'Holiday' WHERE title = 'Trip'");
+        assertSearchCount(db, "title:holiday", 1);
+        assertSearchCount(db, "zanzibar", 1);
+        // Writing a short description in its place reindexes it, and deleting the note removes it
+        db.execSQL("UPDATE note_table SET description = 'Stay home', bodyLength = 0 WHERE title = 'Holiday'");
+        assertSearchCount(db, "zanzibar", 0);
+        assertSearchCount(db, "home", 1);
+        db.execSQL("DELETE FROM note_table WHERE title = 'Holiday'");
+        assertSearchCount(db, "home", 0);
+        insertV9Note(db, "Eggs", "A dozen", 1);
+        assertSearchCount(db, "dozen", 1);
+        db.close();
+    }
+
+    @Test
+    public void migrateAll() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 1);
+        insertNote(db, "Title", "Description", 7);
+        db.close();
+
+        // Opening through Room validates the migrated schema against the current entities.
+        NoteDatabase noteDatabase = Room.databaseBuilder(InstrumentationRegistry.getTargetContext(),
+                NoteDatabase.class, TEST_DB)
+                .addMigrations(NoteMigrations.ALL)
+                .build();
+        assertNote(noteDatabase.getOpenHelper().getWritableDatabase(), "Title", "Description", 7);
+        noteDatabase.close();
+    }
+
+    private static void insertNote(SupportSQLiteDatabase db, String title, String description, int priority) {
+        ContentValues values = new ContentValues();
+        values.put("title", title);
+        values.put("description", description);
+        values.put("priority", priority);
+        db.insert("note_table", SQLiteDatabase.CONFLICT_FAIL, values);
+    }
+
+    // Inserts a note with every column of version 7 on, which have no defaults
+    private static void insertV7Note(SupportSQLiteDatabase db, String title, int priority, long deletedAt) {
+        ContentValues values = new ContentValues();
+        values.put("title", title);
+        values.put("description", "Description");
+        values.put("priority", priority);
+        values.put("updatedAt", 10);
+        values.put("deletedAt", deletedAt);
+        values.put("createdAt", 10);
+        values.put("bodyLength", 0);
+        db.insert("note_table", SQLiteDatabase.CONFLICT_FAIL, values);
+    }
+
+    // Inserts a note with every column of version 9, which have no defaults
+    private static void insertV9Note(SupportSQLiteDatabase db, String title, String description, int priority) {
+        ContentValues values = new ContentValues();
+        values.put("title", title);
+        values.put("description", description);
+        values.put("priority", priority);
+        values.put("updatedAt", 10);
+        values.put("deletedAt", 0);
+        values.put("createdAt", 10);
+        values.put("bodyLength", 0);
+        values.put("guid", title);
+        values.put("version", 0);
+        db.insert("note_table", SQLiteDatabase.CONFLICT_FAIL, values);
+    }
+
+    private static void assertNote(SupportSQLiteDatabase db, String title, String description, int priority) {
+        Cursor cursor = db.query("SELECT title, description, priority FROM note_table");
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(title, cursor.getString(0));
+            assertEquals(description, cursor.getString(1));
+            assertEquals(priority, cursor.getInt(2));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void assertPriorityCount(SupportSQLiteDatabase db, int priority, int count) {
+        Cursor cursor = db.query("SELECT IFNULL(SUM(notes), 0) FROM priority_count WHERE priority = ?",
+                new Object[]{priority});
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(count, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void assertSearchCount(SupportSQLiteDatabase db, String matchExpression, int count) {
+        Cursor cursor = db.query("SELECT COUNT(*) FROM note_fts WHERE note_fts MATCH ?",
+                new Object[]{matchExpression});
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(count, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void assertIndexExists(SupportSQLiteDatabase db, String name) {
+        Cursor cursor = db.query("SELECT name FROM sqlite_master WHERE type = 'index' AND name = ?",
+                new Object[]{name});
+        try {
+            assertTrue(cursor.moveToFirst());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void assertTriggerExists(SupportSQLiteDatabase db, String name, boolean exists) {
+        Cursor cursor = db.query("SELECT name FROM sqlite_master WHERE type = 'trigger' AND name = ?",
+                new Object[]{name});
+        try {
+            assertEquals(exists, cursor.moveToFirst());
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.example.architecturecomponents;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
@@ -9,24 +11,32 @@ import android.widget.EditText;
 import android.widget.NumberPicker;
 import android.widget.Toast;
 
+import java.util.List;
+
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+import androidx.lifecycle.ViewModelProviders;
 
 /*
-    This activity does not communicate with any of the architecture components, it just passes values
-    back to the main activity, where they are then input into the database via the view model.
-    This keeps things simple.
+    This activity is only passed the ID of the note to edit (none when adding a note). It loads the full
+    note by ID through its view model and saves straight through the repository, so the note text is
+    never sent between the activities in Intent extras.
+    Edits are autosaved by the view model once typing stops, and whatever is left is saved when the
+    activity is left (or the save icon is clicked), so there's nothing to lose by leaving.
 */
 public class AddEditNoteActivity extends AppCompatActivity {
     public static final String EXTRA_ID = "com.example.architecturecomponents.EXTRA_ID";
-    public static final String EXTRA_TITLE = "com.example.architecturecomponents.EXTRA_TITLE";
-    public static final String EXTRA_DESCRIPTION = "com.example.architecturecomponents.EXTRA_DESCRIPTION";
-    public static final String EXTRA_PRIORITY = "com.example.architecturecomponents.EXTRA_PRIORITY";
 
     // Local member variables to hold the references to these UI widgets.
     private EditText editTextTitle;
     private EditText editTextDescription;
     private NumberPicker numberPickerPriority;
 
+    // Member variable for the View Model, and the ID of the note being edited (-1 when adding)
+    private AddEditNoteViewModel viewModel;
+    private int noteId;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -44,17 +54,54 @@ public class AddEditNoteActivity extends AppCompatActivity {
         getSupportActionBar().setHomeAsUpIndicator(R.drawable.ic_close);
         // Changes the title of this activity so that it differs from the default app title.
 
+        // creates the view model, uses view model providers which will get an existing view model if there already is one
+        viewModel = ViewModelProviders.of(this).get(AddEditNoteViewModel.class);
+
         // Get the intent that created this activity
         Intent intent = getIntent();
+        noteId = intent.getIntExtra(EXTRA_ID, -1);
+        viewModel.start(noteId);
+
+        // Every edit is handed to the view model, which saves the changed fields once typing stops. The
+        // text fields restore what was typed when the activity is recreated, the number picker doesn't.
+        if (savedInstanceState != null) {
+            numberPickerPriority.setValue(viewModel.getPriority());
+        }
+        editTextTitle.addTextChangedListener(new EditedWatcher() {
+            @Override
+            public void afterTextChanged(Editable s) {
+                viewModel.setTitle(s.toString());
+            }
+        });
+        editTextDescription.addTextChangedListener(new EditedWatcher() {
+            @Override
+            public void afterTextChanged(Editable s) {
+                viewModel.setDescription(s.toString());
+            }
+        });
+        // Each priority in the picker shows how many notes have it
+        viewModel.getPriorityCounts().observe(this, new Observer<List<NotePriorityCount>>() {
+            @Override
+            public void onChanged(List<NotePriorityCount> counts) {
+                showPriorityCounts(counts);
+            }
+        });
+        numberPickerPriority.setOnValueChangedListener(new NumberPicker.OnValueChangeListener() {
+            @Override
+            public void onValueChange(NumberPicker picker, int oldVal, int newVal) {
+                viewModel.setPriority(newVal);
+            }
+        });
 
         // If the intent that created this activity has an extra for ID, then title is edit note
         // else it is an add note.
-        if (intent.hasExtra(EXTRA_ID)) {
+        if (noteId != -1) {
             setTitle("Edit note");
-            // Set the values in the text/priority fields
-            editTextTitle.setText(intent.getStringExtra(EXTRA_TITLE));
-            editTextDescription.setText(intent.getStringExtra(EXTRA_DESCRIPTION));
-            numberPickerPriority.setValue(intent.getIntExtra(EXTRA_PRIORITY, 1));
+            // Load the note and set the values in the text/priority fields. Not done when the activity is
+            // recreated, as the fields then restore what the user had typed.
+            if (savedInstanceState == null) {
+                loadNote(noteId);
+            }
         } else {
             setTitle("Add Note");
         }
@@ -62,37 +109,73 @@ public class AddEditNoteActivity extends AppCompatActivity {
 
     }
 
-    private void saveNote() {
-        // Get the values from the text/number input fields
-        String title = editTextTitle.getText().toString();
-        String description = editTextDescription.getText().toString();
-        int priority = numberPickerPriority.getValue();
+    // Loads the note in the background and fills in the fields once, later changes to the note are ignored
+    // so they don't overwrite what is being typed.
+    private void loadNote(int id) {
+        final LiveData<Note> note = viewModel.getNote(id);
+        note.observe(this, new Observer<Note>() {
+            @Override
+            public void onChanged(Note loaded) {
+                note.removeObserver(this);
+                if (loaded == null) {
+                    Toast.makeText(AddEditNoteActivity.this, "Note no longer exists", Toast.LENGTH_SHORT).show();
+                    finish();
+                    return;
+                }
+                // Taken as saved first, so putting it in the fields doesn't count as an edit
+                viewModel.setLoadedNote(loaded);
+                editTextTitle.setText(loaded.getTitle());
+                editTextDescription.setText(loaded.getDescription());
+                numberPickerPriority.setValue(loaded.getPriority());
+            }
+        });
+    }
 
+    // Shows each priority in the picker with its note count, such as "5 (12)"
+    private void showPriorityCounts(List<NotePriorityCount> counts) {
+        int min = numberPickerPriority.getMinValue();
+        String[] values = new String[numberPickerPriority.getMaxValue() - min + 1];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = String.valueOf(min + i);
+        }
+        for (NotePriorityCount count : counts) {
+            int i = count.getPriority() - min;
+            if (i >= 0 && i < values.length) {
+                values[i] = count.getPriority() + " (" + count.getNotes() + ")";
+            }
+        }
+        numberPickerPriority.setDisplayedValues(values);
+    }
+
+    private void saveNote() {
         // If either title or description is empty (uses trim() to remove any leading/trailing whitespace, runs toast.
-        if (title.trim().isEmpty() || description.trim().isEmpty()) {
+        if (!viewModel.isValid()) {
             // Informs user they need to insert a title and description
             Toast.makeText(this, "Please insert a title and description", Toast.LENGTH_SHORT).show();
             // Returns to start of method
             return;
         }
+        // Saving happens in finish
+        finish();
+    }
 
-        // Create an intent to pass data into the static strings, so they can be retrieved back in main activity.
-        Intent data = new Intent();
-        data.putExtra(EXTRA_TITLE, title);
-        data.putExtra(EXTRA_DESCRIPTION, description);
-        data.putExtra(EXTRA_PRIORITY, priority);
-
-        // Variable for the ID, which is retrieved from the intent.
-        int id = getIntent().getIntExtra(EXTRA_ID, -1);
-        // if the value of id is not -1 (-1 is an impossible database id value) then extra is put for ID,
-        // in order to return it to the main activity.
-        if (id != -1) {
-            data.putExtra(EXTRA_ID, id);
-        }
+    // Leaving the activity (or the app) saves any edits that are still waiting for the autosave.
+    @Override
+    protected void onPause() {
+        super.onPause();
+        viewModel.saveNow();
+    }
 
+    // However the activity is closed, the edits are saved first. The result says whether anything was.
+    @Override
+    public void finish() {
+        viewModel.saveNow();
+        if (viewModel.hasUnsavedChanges()) {
+            Toast.makeText(this, "Changes without a title and description weren't saved", Toast.LENGTH_SHORT).show();
+        }
         // Passes back if the input went as expected (for example, was close button pressed?)
-        setResult(RESULT_OK, data);
-        finish();
+        setResult(viewModel.hasSaved() ? RESULT_OK : RESULT_CANCELED);
+        super.finish();
     }
 
     // Creates the save icon on the activity bar.
@@ -120,4 +203,15 @@ public class AddEditNoteActivity extends AppCompatActivity {
         }
 
     }
+
+    // Text watcher that only needs afterTextChanged
+    private abstract static class EditedWatcher implements TextWatcher {
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+        }
+    }
 }
@@ -0,0 +1,206 @@
+package com.example.architecturecomponents;
+
+import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+
+// View model for AddEditNoteActivity. Loads the note being edited by ID and saves straight through the
+// repository, so the note's text never has to travel between the activities in Intent extras.
+// Edits are saved automatically once typing stops for AUTOSAVE_DEBOUNCE_MS. Each field remembers whether it
+// has changed since the last save, and only the changed fields are written, so changing the priority of a
+// long note doesn't rewrite its description. A burst of edits ends up as one save, and saves queued close
+// together are committed in one transaction by the writer.
+public class AddEditNoteViewModel extends AndroidViewModel {
+    // How long the user has to stop typing for before the note is saved
+    private static final long AUTOSAVE_DEBOUNCE_MS = 1000;
+
+    // Declare the repository instance, and the note being edited (null when adding a note)
+    private NoteRepository repository;
+    private LiveData<Note> note;
+    private LiveData<List<NotePriorityCount>> priorityCounts;
+
+    // ID of the note being edited, -1 when adding until the new note has been inserted. Set on the save thread.
+    private volatile int noteId = -1;
+    private boolean started;
+
+    // The fields as last saved (or loaded), the fields as they are in the editor, and which fields have been
+    // edited since the last save (NoteWriter.FIELD_ flags). Only used on the main thread.
+    private String savedTitle = "";
+    private String savedDescription = "";
+    private int savedPriority = NoteListQuery.MIN_PRIORITY;
+    private String title = "";
+    private String description = "";
+    private int priority = NoteListQuery.MIN_PRIORITY;
+    private int dirtyFields;
+
+    // Whether anything has been saved since the editor was opened
+    private boolean saved;
+
+    // Used to save the note once the user stops typing
+    private Handler handler = new Handler(Looper.getMainLooper());
+    private Runnable autosave = new Runnable() {
+        @Override
+        public void run() {
+            saveNow();
+        }
+    };
+
+    // Saves run here one at a time, so a new note has been inserted (and has its ID) before any later edit
+    // of it is written
+    private ExecutorService saveExecutor = Executors.newSingleThreadExecutor();
+
+    //Constructor for the View Model which takes the application as context
+    public AddEditNoteViewModel(@NonNull Application application) {
+        super(application);
+        // Gets the repository instance, passed the application context
+        repository = NoteRepository.getInstance(application);
+    }
+
+    // Sets the ID of the note being edited, -1 to add a note. Only the first call counts, so a recreated
+    // activity doesn't undo the insert of a note it was adding.
+    public void start(int id) {
+        if (!started) {
+            started = true;
+            noteId = id;
+        }
+    }
+
+    // Returns LiveData of the note with the given ID, loaded in the background. The same LiveData is kept
+    // when the activity is recreated so the note isn't loaded again.
+    public LiveData<Note> getNote(int id) {
+        if (note == null) {
+            note = repository.getNote(id);
+        }
+        return note;
+    }
+
+    // Returns LiveData of the number of notes at each priority, shown in the priority picker.
+    public LiveData<List<NotePriorityCount>> getPriorityCounts() {
+        if (priorityCounts == null) {
+            priorityCounts = repository.getPriorityCounts();
+        }
+        return priorityCounts;
+    }
+
+    // Takes the fields of the loaded note as saved, called before they are put in the editor.
+    public void setLoadedNote(Note loaded) {
+        savedTitle = title = loaded.getTitle();
+        savedDescription = description = loaded.getDescription();
+        savedPriority = priority = loaded.getPriority();
+        dirtyFields = 0;
+    }
+
+    // Called as each field is edited, marks the field as changed and restarts the autosave wait.
+    public void setTitle(String text) {
+        if (!text.equals(title)) {
+            title = text;
+            edited(NoteWriter.FIELD_TITLE);
+        }
+    }
+
+    public void setDescription(String text) {
+        if (!text.equals(description)) {
+            description = text;
+            edited(NoteWriter.FIELD_DESCRIPTION);
+        }
+    }
+
+    public void setPriority(int value) {
+        if (value != priority) {
+            priority = value;
+            edited(NoteWriter.FIELD_PRIORITY);
+        }
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    // True if the note has a title and a description, a note without them isn't saved
+    public boolean isValid() {
+        return !title.trim().isEmpty() && !description.trim().isEmpty();
+    }
+
+    // True if there are edits that haven't been saved, as the note isn't valid
+    public boolean hasUnsavedChanges() {
+        return changedFields() != 0;
+    }
+
+    // True if anything has been saved since the editor was opened
+    public boolean hasSaved() {
+        return saved;
+    }
+
+    // Saves the edited fields now rather than waiting for the user to stop typing. Does nothing if nothing
+    // has changed, or if the note isn't valid (the edits are kept, and saved once it is).
+    public void saveNow() {
+        handler.removeCallbacks(autosave);
+        final int fields = changedFields();
+        if (fields == 0 || !isValid()) {
+            return;
+        }
+        // The note holds every field as it is now, but only the changed ones are written to an existing note
+        final Note edited = new Note(title, description, priority);
+        savedTitle = title;
+        savedDescription = description;
+        savedPriority = priority;
+        dirtyFields = 0;
+        saved = true;
+        saveExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (noteId == -1) {
+                    try {
+                        int id = repository.insertAndGetId(edited);
+                        // If the insert failed the next save tries again
+                        if (id > 0) {
+                            noteId = id;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                } else {
+                    edited.setId(noteId);
+                    repository.updateFields(edited, fields);
+                }
+            }
+        });
+    }
+
+    // Saves anything left once the editor is gone, then lets the save thread stop once it is done
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        saveNow();
+        saveExecutor.shutdown();
+    }
+
+    private void edited(int field) {
+        dirtyFields |= field;
+        handler.removeCallbacks(autosave);
+        handler.postDelayed(autosave, AUTOSAVE_DEBOUNCE_MS);
+    }
+
+    // The edited fields that differ from what was saved, a field typed over and changed back isn't written
+    private int changedFields() {
+        int fields = dirtyFields;
+        if ((fields & NoteWriter.FIELD_TITLE) != 0 && title.equals(savedTitle)) {
+            fields &= ~NoteWriter.FIELD_TITLE;
+        }
+        if ((fields & NoteWriter.FIELD_DESCRIPTION) != 0 && description.equals(savedDescription)) {
+            fields &= ~NoteWriter.FIELD_DESCRIPTION;
+        }
+        if ((fields & NoteWriter.FIELD_PRIORITY) != 0 && priority == savedPriority) {
+            fields &= ~NoteWriter.FIELD_PRIORITY;
+        }
+        return fields;
+    }
+}
@@ -1,34 +1,64 @@
 package com.example.architecturecomponents;
 
+import android.content.DialogInterface;
 import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.Toast;
 
+import java.util.List;
+import java.util.Set;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.view.ActionMode;
+import androidx.appcompat.widget.SearchView;
 import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModelProviders;
+import androidx.paging.PagedList;
 import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
-
-import java.util.List;
+import com.google.android.material.snackbar.Snackbar;
 
 public class MainActivity extends AppCompatActivity {
+    private static final String TAG = "MainActivity";
     // Constant for the intent request code to add
     public static final int ADD_NOTE_REQUEST = 1;
     // Constant for the intent request code to edit
     public static final int EDIT_NOTE_REQUEST = 2;
+    // Constants for the intent request codes to pick the files to import from and export to
+    public static final int IMPORT_NOTES_REQUEST = 3;
+    public static final int EXPORT_JSON_REQUEST = 4;
+    public static final int EXPORT_CSV_REQUEST = 5;
+    // Roughly the height of a note row, used to work out how many rows fill the screen
+    private static final float ESTIMATED_ROW_HEIGHT_DP = 72;
+    // Rows inflated and pooled on top of a screenful, for the first scroll
+    private static final int EXTRA_ROWS = 3;
+    // Rows that just scrolled off kept bound, the recycler view's default is 2
+    private static final int VIEW_CACHE_SIZE = 4;
 
     // Member variable for View Model
     private NoteViewModel noteViewModel;
+    // Snackbar showing the progress of an import/export, with a button to cancel it
+    private Snackbar transferSnackbar;
+    // Snackbar showing the progress of deleting all notes
+    private Snackbar deleteAllSnackbar;
+    // Set once the first notes have been shown, which is when start up is counted as finished
+    private boolean firstNotesShown;
+    // The multi-select bar, shown while any notes are picked
+    private ActionMode actionMode;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -50,26 +80,121 @@ public class MainActivity extends AppCompatActivity {
         });
 
         // Holds a reference to the recycler view
-        RecyclerView recyclerView = findViewById(R.id.recycler_view);
-        // Layout manager is what takes care of displaying the items below each other.
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        final RecyclerView recyclerView = findViewById(R.id.recycler_view);
+        // Layout manager is what takes care of displaying the items below each other. Rows for the next
+        // scroll are prefetched between frames (on by default, but relied on here).
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        layoutManager.setItemPrefetchEnabled(true);
+        recyclerView.setLayoutManager(layoutManager);
         // Sets the fixed size setting to true, makes recycler view more efficient.
         recyclerView.setHasFixedSize(true);
 
-        // Create noteadapter instance
-        final NoteAdapter adapter = new NoteAdapter();
+        // creates the view model, uses view model providers which will get an existing view model if there already is one
+        noteViewModel = ViewModelProviders.of(this).get(NoteViewModel.class);
+
+        // Create noteadapter instance, it hands the paint settings of its rows to the text layout that
+        // measures the text of each page as it loads.
+        final NoteAdapter adapter = new NoteAdapter(noteViewModel.getTextLayout());
         // Set the recyclerview to use this as the adapter.
         recyclerView.setAdapter(adapter);
+        // A screen of rows plus a couple more are inflated in the background now, while the database opens,
+        // rather than on the main thread for the first frame and first scroll. The first one to finish also
+        // gives the text layout its paint settings, normally before the first page has loaded.
+        int screenRows = getResources().getDisplayMetrics().heightPixels
+                / Math.round(ESTIMATED_ROW_HEIGHT_DP * getResources().getDisplayMetrics().density) + 1;
+        adapter.preInflate(recyclerView, screenRows + EXTRA_ROWS);
+        // The pool keeps enough rows for a whole screen, the default of 5 throws away rows when the list is
+        // replaced (a new sort or search) and they then have to be inflated again. The view cache keeps a
+        // few rows that just scrolled off bound, so a fling that changes direction doesn't rebind them.
+        recyclerView.getRecycledViewPool().setMaxRecycledViews(0, screenRows + EXTRA_ROWS);
+        recyclerView.setItemViewCacheSize(VIEW_CACHE_SIZE);
 
-        // creates the view model, uses view model providers which will get an existing view model if there already is one
-        noteViewModel = ViewModelProviders.of(this).get(NoteViewModel.class);
-        // Get LiveData, only retrieves LiveData when activity is in foreground
-        noteViewModel.getAllNotes().observe(this, new Observer<List<Note>>() {
+        // The time of the first frame is logged, the time of the first one with notes in is logged below.
+        recyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                recyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                NoteApplication.logStartupTime("First frame");
+                return true;
+            }
+        });
+
+        // Get LiveData, only retrieves LiveData when activity is in foreground. This is every note, or the
+        // search results while there is search text.
+        noteViewModel.getNotes().observe(this, new Observer<PagedList<NoteSummary>>() {
             @Override
-            public void onChanged(List<Note> notes) {
-                // Every timer there is a change, the notes are inserted into the view via the adapter.
+            public void onChanged(PagedList<NoteSummary> notes) {
+                // Every time there is a change, the new paged list is handed to the adapter, which only
+                // binds the pages that are scrolled into view.
                 adapter.submitList(notes);
+                if (!firstNotesShown) {
+                    firstNotesShown = true;
+                    // Counted once the frame with the notes in is about to be drawn
+                    recyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+                        @Override
+                        public boolean onPreDraw() {
+                            recyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                            reportStartupFinished();
+                            return true;
+                        }
+                    });
+                }
+            }
+        });
 
+        // The number of notes is shown under the app name, read from the kept counts rather than counted
+        noteViewModel.getNoteCount().observe(this, new Observer<Integer>() {
+            @Override
+            public void onChanged(Integer count) {
+                if (getSupportActionBar() != null && count != null) {
+                    getSupportActionBar().setSubtitle(count == 1 ? "1 note" : count + " notes");
+                }
+            }
+        });
+
+        // An edit that leaves a note where it is changes the loaded note rather than reloading the list, so
+        // only its row is bound again.
+        noteViewModel.getPatchedNotes().observe(this, new Observer<List<NoteSummary>>() {
+            @Override
+            public void onChanged(List<NoteSummary> notes) {
+                adapter.rebind(notes);
+            }
+        });
+
+        // Picked notes are highlighted, and the multi-select bar shows while there are any. The picks are kept
+        // by the view model, so the bar comes back when the activity is recreated.
+        noteViewModel.getSelection().observe(this, new Observer<Set<Integer>>() {
+            @Override
+            public void onChanged(Set<Integer> selected) {
+                adapter.setSelectedIds(selected);
+                showSelection(selected);
+            }
+        });
+
+        // Shows the progress of an import or export while it runs, then the result.
+        noteViewModel.getTransferProgress().observe(this, new Observer<NoteTransfer.Progress>() {
+            @Override
+            public void onChanged(NoteTransfer.Progress progress) {
+                showTransferProgress(progress);
+            }
+        });
+
+        // Shows what a sync did once it is done
+        noteViewModel.getSyncResult().observe(this, new Observer<String>() {
+            @Override
+            public void onChanged(String result) {
+                if (result != null) {
+                    Toast.makeText(MainActivity.this, result, Toast.LENGTH_LONG).show();
+                    noteViewModel.clearSyncResult();
+                }
+            }
+        });
+
+        // Shows the progress of deleting all notes while it runs, then the result.
+        noteViewModel.getDeleteAllProgress().observe(this, new Observer<NoteViewModel.DeleteAllProgress>() {
+            @Override
+            public void onChanged(NoteViewModel.DeleteAllProgress progress) {
+                showDeleteAllProgress(progress);
             }
         });
 
@@ -82,12 +207,23 @@ public class MainActivity extends AppCompatActivity {
                 return false;
             }
 
+            // No swiping while notes are picked, the multi-select bar deletes them instead
+            @Override
+            public int getSwipeDirs(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder viewHolder) {
+                return actionMode != null ? 0 : super.getSwipeDirs(recyclerView, viewHolder);
+            }
+
             @Override
             public void onSwiped(@NonNull RecyclerView.ViewHolder viewHolder, int direction) {
+                NoteSummary note = adapter.getNoteAt(viewHolder.getAdapterPosition());
+                if (note == null) {
+                    // Not loaded yet, put the row back
+                    adapter.notifyItemChanged(viewHolder.getAdapterPosition());
+                    return;
+                }
                 // uses the view model delete method, passes in note view the view Holder by getting the adapter position
-                noteViewModel.delete(adapter.getNoteAt(viewHolder.getAdapterPosition()));
-                // Feedback message
-                Toast.makeText(MainActivity.this, "Note deleted", Toast.LENGTH_SHORT).show();
+                int deleted = noteViewModel.delete(note);
+                showUndoDelete(deleted);
             }
 
             // Needs to call this method, otherwise will not work if item touch helper is not attached to the recyclerView
@@ -96,62 +232,54 @@ public class MainActivity extends AppCompatActivity {
         // Implementing the setOnItemClickListener, via anonymous inner class. Click is handled within onItemClick.
         adapter.setOnItemClickListener(new NoteAdapter.OnItemClickListener() {
             @Override
-            public void onItemClick(Note note) {
+            public void onItemClick(NoteSummary note) {
+                // While notes are picked, a tap picks or unpicks the note instead of opening it
+                if (actionMode != null) {
+                    noteViewModel.toggleSelected(note);
+                    return;
+                }
                 // Open the AddEditNoteActivity via intent, pass MainActivity context, not context of the onItemClick.
                 Intent intent = new Intent(MainActivity.this, AddEditNoteActivity.class);
-                // Put extra values to the activity, uses note variable from the onItemClick declaration in NoteAdapter
+                // Only the ID is passed, the list only has a summary so the activity loads the full note itself.
                 intent.putExtra(AddEditNoteActivity.EXTRA_ID, note.getId());
-                intent.putExtra(AddEditNoteActivity.EXTRA_TITLE, note.getTitle());
-                intent.putExtra(AddEditNoteActivity.EXTRA_DESCRIPTION, note.getDescription());
-                intent.putExtra(AddEditNoteActivity.EXTRA_PRIORITY, note.getPriority());
                 // Start the activity, uses edit note request constant for it's request ID.
                 startActivityForResult(intent, EDIT_NOTE_REQUEST);
             }
+
+            // A long press picks the note, showing the multi-select bar
+            @Override
+            public void onItemLongClick(NoteSummary note) {
+                noteViewModel.toggleSelected(note);
+            }
         });
     }
 
-    // When the add note activity is closed it will return values, this override handles these results.
+    // When the add note activity is closed it returns whether the note was saved, this override handles these results.
     @Override
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
 
+        // Files picked for an import or export, nothing to do if the picker was closed.
+        if (requestCode == IMPORT_NOTES_REQUEST || requestCode == EXPORT_JSON_REQUEST || requestCode == EXPORT_CSV_REQUEST) {
+            if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+                Uri uri = data.getData();
+                if (requestCode == IMPORT_NOTES_REQUEST) {
+                    noteViewModel.importNotes(uri);
+                } else {
+                    noteViewModel.exportNotes(uri, requestCode == EXPORT_JSON_REQUEST
+                            ? NoteTransfer.Format.JSON : NoteTransfer.Format.CSV);
+                }
+            }
+            return;
+        }
+
+        // The note has already been saved by AddEditNoteActivity, the result code says whether it was.
         // if the request code is the add note request, and the result code is ok, then true.
         if (requestCode == ADD_NOTE_REQUEST && resultCode == RESULT_OK) {
-            // Get the extras from the add note activity.
-            String title = data.getStringExtra(AddEditNoteActivity.EXTRA_TITLE);
-            String description = data.getStringExtra(AddEditNoteActivity.EXTRA_DESCRIPTION);
-            int priority = data.getIntExtra(AddEditNoteActivity.EXTRA_PRIORITY, 1);
-
-            // Note instance, passed the values from extras
-            Note note = new Note(title, description, priority);
-            // Inserted into database via view model insert method.
-            noteViewModel.insert(note);
-
             // Feedback message
             Toast.makeText(this, "Note saved", Toast.LENGTH_SHORT).show();
         // if the request code is the edit note request, and the result code is ok, then true.
         } else if (requestCode == EDIT_NOTE_REQUEST && resultCode == RESULT_OK) {
-            // Get the ID from the returned extra
-            int id = data.getIntExtra(AddEditNoteActivity.EXTRA_ID, -1);
-
-            // if ID is equal to -1, something went wrong. Exit method and show toast.
-            if (id == -1) {
-                Toast.makeText(this, "Note can't be updated", Toast.LENGTH_SHORT).show();
-                return;
-            }
-
-            // Get the other 3 extras
-            String title = data.getStringExtra(AddEditNoteActivity.EXTRA_TITLE);
-            String description =data.getStringExtra(AddEditNoteActivity.EXTRA_DESCRIPTION);
-            int priority = data.getIntExtra(AddEditNoteActivity.EXTRA_PRIORITY, 1);
-
-            // Create a note
-            Note note = new Note(title, description, priority);
-            // set the ID of this note, so that correct note can be edited.
-            note.setId(id);
-            // Update the note via the viewmodel.
-            noteViewModel.update(note);
-
             Toast.makeText(this, "Note had been updated", Toast.LENGTH_SHORT).show();
 
         // Else is for when result is not ok
@@ -168,23 +296,326 @@ public class MainActivity extends AppCompatActivity {
         MenuInflater menuInflater = getMenuInflater();
         // use it to inflate the main_menu, using the menu value passed into this method.
         menuInflater.inflate(R.menu.main_menu, menu);
+        // The database metrics are only offered in debug builds
+        menu.findItem(R.id.show_metrics).setVisible(BuildConfig.DEBUG);
+
+        // The search box passes every change of text to the view model, which waits for typing to stop
+        // before running the search.
+        SearchView searchView = (SearchView) menu.findItem(R.id.search_notes).getActionView();
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                noteViewModel.setSearchText(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                noteViewModel.setSearchText(newText);
+                return true;
+            }
+        });
         return true;
     }
 
+    // Ticks the current sort order and priority filter in their submenus, and shows sync if there is a server
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.sync_notes).setVisible(noteViewModel.canSync());
+        NoteListQuery query = noteViewModel.getListQuery();
+        switch (query.getSort()) {
+            case TITLE:
+                menu.findItem(R.id.sort_title).setChecked(true);
+                break;
+            case CREATED:
+                menu.findItem(R.id.sort_created).setChecked(true);
+                break;
+            case UPDATED:
+                menu.findItem(R.id.sort_updated).setChecked(true);
+                break;
+            default:
+                menu.findItem(R.id.sort_priority).setChecked(true);
+                break;
+        }
+        if (query.getMinPriority() == 7) {
+            menu.findItem(R.id.filter_high).setChecked(true);
+        } else if (query.getMinPriority() == 4) {
+            menu.findItem(R.id.filter_medium).setChecked(true);
+        } else if (query.getMaxPriority() == 3) {
+            menu.findItem(R.id.filter_low).setChecked(true);
+        } else {
+            menu.findItem(R.id.filter_all).setChecked(true);
+        }
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     // Used to handle when one of the menu options is selected
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         // switch statement on the item ID's
         switch (item.getItemId()) {
+            // Sort orders, the database sorts using the index for each one
+            case R.id.sort_priority:
+                noteViewModel.setSort(NoteSort.PRIORITY);
+                return true;
+            case R.id.sort_title:
+                noteViewModel.setSort(NoteSort.TITLE);
+                return true;
+            case R.id.sort_created:
+                noteViewModel.setSort(NoteSort.CREATED);
+                return true;
+            case R.id.sort_updated:
+                noteViewModel.setSort(NoteSort.UPDATED);
+                return true;
+            // Priority filters, also applied by the database
+            case R.id.filter_all:
+                noteViewModel.setPriorityRange(NoteListQuery.MIN_PRIORITY, NoteListQuery.MAX_PRIORITY);
+                return true;
+            case R.id.filter_high:
+                noteViewModel.setPriorityRange(7, NoteListQuery.MAX_PRIORITY);
+                return true;
+            case R.id.filter_medium:
+                noteViewModel.setPriorityRange(4, 6);
+                return true;
+            case R.id.filter_low:
+                noteViewModel.setPriorityRange(NoteListQuery.MIN_PRIORITY, 3);
+                return true;
             // If delete all notes is selected
             case R.id.delete_all_notes:
-                // delete all notes via the view model
+                // delete all notes via the view model, the progress is shown as it goes
                 noteViewModel.deleteAllNotes();
-                // Feedback message
-                Toast.makeText(this, "All notes deleted", Toast.LENGTH_SHORT).show();
+                return true;
+            // Pick a JSON or CSV file to import
+            case R.id.import_notes:
+                Intent importIntent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                importIntent.addCategory(Intent.CATEGORY_OPENABLE);
+                importIntent.setType("*/*");
+                importIntent.putExtra(Intent.EXTRA_MIME_TYPES, new String[]{"application/json",
+                        "text/csv", "text/comma-separated-values", "text/plain"});
+                startActivityForResult(importIntent, IMPORT_NOTES_REQUEST);
+                return true;
+            // Pick where to create the export file
+            case R.id.export_notes_json:
+                startActivityForResult(createExportIntent("application/json", "notes.json"), EXPORT_JSON_REQUEST);
+                return true;
+            case R.id.export_notes_csv:
+                startActivityForResult(createExportIntent("text/csv", "notes.csv"), EXPORT_CSV_REQUEST);
+                return true;
+            // Push and pull the changes since the last sync
+            case R.id.sync_notes:
+                noteViewModel.syncNotes();
+                return true;
+            // Show the database timings, they are also logged and saved as JSON
+            case R.id.show_metrics:
+                String report = noteViewModel.dumpMetrics();
+                Log.i(TAG, "Database metrics\n" + report);
+                new AlertDialog.Builder(this)
+                        .setTitle("Database metrics")
+                        .setMessage(report)
+                        .setPositiveButton(android.R.string.ok, null)
+                        .show();
                 return true;
             default:
                 return super.onOptionsItemSelected(item);
         }
     }
+
+    // Creates the intent used to pick where an export is saved
+    private Intent createExportIntent(String mimeType, String fileName) {
+        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType(mimeType);
+        intent.putExtra(Intent.EXTRA_TITLE, fileName);
+        return intent;
+    }
+
+    // Starts the multi-select bar when the first note is picked and shows how many are picked, or closes
+    // it once none are.
+    private void showSelection(Set<Integer> selected) {
+        if (selected.isEmpty()) {
+            if (actionMode != null) {
+                actionMode.finish();
+            }
+            return;
+        }
+        if (actionMode == null) {
+            actionMode = startSupportActionMode(selectionCallback);
+        }
+        if (actionMode != null) {
+            actionMode.setTitle(selected.size() + " selected");
+            // Search may have started or stopped since, which changes whether select all is offered
+            actionMode.invalidate();
+        }
+    }
+
+    // The multi-select bar, acting on every picked note at once. Each action is one write, which the
+    // writer commits in one transaction however many notes are picked.
+    private final ActionMode.Callback selectionCallback = new ActionMode.Callback() {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            mode.getMenuInflater().inflate(R.menu.selection_menu, menu);
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            // Select all picks every note of the list query, which isn't what is shown while searching
+            menu.findItem(R.id.select_all).setVisible(!noteViewModel.isSearching());
+            return true;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            switch (item.getItemId()) {
+                case R.id.delete_selected:
+                    showUndoDelete(noteViewModel.deleteSelected());
+                    return true;
+                case R.id.set_selected_priority:
+                    showSelectedPriorityPicker();
+                    return true;
+                case R.id.select_all:
+                    noteViewModel.selectAll();
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        // Closed by the back or done button, unpicks the notes. Not when the activity is only being
+        // recreated, the bar is started again for the same notes.
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            actionMode = null;
+            if (!isChangingConfigurations()) {
+                noteViewModel.clearSelection();
+            }
+        }
+    };
+
+    // Asks for the priority to give the picked notes
+    private void showSelectedPriorityPicker() {
+        final String[] priorities = new String[NoteListQuery.MAX_PRIORITY - NoteListQuery.MIN_PRIORITY + 1];
+        for (int i = 0; i < priorities.length; i++) {
+            priorities[i] = String.valueOf(NoteListQuery.MIN_PRIORITY + i);
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Set priority")
+                .setItems(priorities, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        int priority = NoteListQuery.MIN_PRIORITY + which;
+                        int changed = noteViewModel.setSelectedPriority(priority);
+                        Toast.makeText(MainActivity.this, (changed == 1 ? "1 note" : changed + " notes")
+                                + " set to priority " + priority, Toast.LENGTH_SHORT).show();
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    // Shows how many notes have been deleted with an undo button. Deleting more notes while it shows
+    // replaces it with the new count, so undo brings all of them back.
+    private void showUndoDelete(int deleted) {
+        Snackbar.make(findViewById(R.id.recycler_view),
+                deleted == 1 ? "Note deleted" : deleted + " notes deleted", Snackbar.LENGTH_LONG)
+                .setAction("Undo", new View.OnClickListener() {
+                    @Override
+                    public void onClick(View v) {
+                        noteViewModel.undoDelete();
+                    }
+                })
+                .addCallback(new Snackbar.Callback() {
+                    @Override
+                    public void onDismissed(Snackbar snackbar, int event) {
+                        // Replaced by the snackbar for the next delete, or undone, keeps the list
+                        if (event != DISMISS_EVENT_CONSECUTIVE && event != DISMISS_EVENT_ACTION) {
+                            noteViewModel.clearUndo();
+                        }
+                    }
+                })
+                .show();
+    }
+
+    // Logs how long start up took, and tells the system the activity is fully drawn so the time also shows
+    // in "am start -W" and as "Fully drawn" in logcat. Not reported on KitKat, where it needs a permission.
+    private void reportStartupFinished() {
+        NoteApplication.logStartupTime("First notes shown");
+        if (Build.VERSION.SDK_INT > Build.VERSION_CODES.KITKAT) {
+            reportFullyDrawn();
+        }
+    }
+
+    // Shows how many notes have been deleted in a snackbar while deleting them all, and a message once done.
+    private void showDeleteAllProgress(NoteViewModel.DeleteAllProgress progress) {
+        if (progress == null) {
+            return;
+        }
+        if (!progress.finished) {
+            String text = "Deleting notes: " + progress.deleted + " of " + progress.total;
+            if (deleteAllSnackbar == null) {
+                deleteAllSnackbar = Snackbar.make(findViewById(R.id.recycler_view), text, Snackbar.LENGTH_INDEFINITE);
+                deleteAllSnackbar.show();
+            } else {
+                deleteAllSnackbar.setText(text);
+            }
+            return;
+        }
+        if (deleteAllSnackbar != null) {
+            deleteAllSnackbar.dismiss();
+            deleteAllSnackbar = null;
+        }
+        // Feedback message, the notes deleted before a failure or a stop stay deleted
+        if (progress.error != null) {
+            Toast.makeText(this, "Delete failed after " + progress.deleted + " notes: " + progress.error,
+                    Toast.LENGTH_LONG).show();
+        } else if (progress.cancelled) {
+            Toast.makeText(this, "Deleted " + progress.deleted + " of " + progress.total + " notes before stopping",
+                    Toast.LENGTH_LONG).show();
+        } else {
+            Toast.makeText(this, "All notes deleted", Toast.LENGTH_SHORT).show();
+        }
+        // Shown once, not again when the activity is recreated
+        noteViewModel.clearDeleteAllProgress();
+    }
+
+    // Shows an import/export in a snackbar with a cancel button while it runs, and the result once finished.
+    private void showTransferProgress(NoteTransfer.Progress progress) {
+        if (progress == null) {
+            return;
+        }
+        String action = progress.importing ? "Imported " : "Exported ";
+        if (!progress.finished) {
+            String text = (progress.importing ? "Importing notes: " : "Exporting notes: ") + progress.notes;
+            if (transferSnackbar == null) {
+                transferSnackbar = Snackbar.make(findViewById(R.id.recycler_view), text, Snackbar.LENGTH_INDEFINITE)
+                        .setAction("Cancel", new View.OnClickListener() {
+                            @Override
+                            public void onClick(View v) {
+                                noteViewModel.cancelTransfer();
+                            }
+                        });
+                transferSnackbar.show();
+            } else {
+                transferSnackbar.setText(text);
+            }
+            return;
+        }
+
+        // Finished, swap the progress for the result
+        if (transferSnackbar != null) {
+            transferSnackbar.dismiss();
+            transferSnackbar = null;
+        }
+        String message;
+        if (progress.error != null) {
+            message = (progress.importing ? "Import" : "Export") + " failed after " + progress.notes + " notes: " + progress.error;
+        } else if (progress.cancelled) {
+            message = action + progress.notes + " notes before cancelling";
+        } else {
+            message = action + progress.notes + " notes";
+        }
+        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+        // Shown once, not again when the activity is recreated
+        noteViewModel.clearTransferProgress();
+    }
 }
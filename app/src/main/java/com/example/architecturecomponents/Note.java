@@ -1,27 +1,62 @@
 package com.example.architecturecomponents;
 
+import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 // Entity is used to insert the "boilerplate" code that you would normally need to use
 // Results in this class being turned into an SQLite table within the database.
 // Name is changed to "note_table" to better reflect SQL naming conventions.
-@Entity(tableName = "note_table")
+// There is an index for each order the list can be sorted in (see NoteSort), each matching the
+// "deletedAt = 0" filter, ORDER BY and keyset WHERE of the paged list queries built by NoteListQuery, so
+// SQLite walks the index instead of scanning and sorting the whole table, and never even reads deleted
+// rows. The priority one also finds the deleted rows for the purge. The guid one finds the note a synced
+// change is for.
+@Entity(tableName = "note_table", indices = {
+        @Index(value = {"deletedAt", "priority", "id"}),
+        @Index(value = {"deletedAt", "title", "id"}),
+        @Index(value = {"deletedAt", "createdAt", "id"}),
+        @Index(value = {"deletedAt", "updatedAt", "id"}),
+        @Index(value = {"guid"}, unique = true)})
 public class Note {
 
     //Used as the primary key for the table
     @PrimaryKey(autoGenerate = true)
     private int id;
 
-    //The note title
+    //The note title. Compared ignoring case, so sorting by title puts "apple" before "Banana".
+    @ColumnInfo(collate = ColumnInfo.NOCASE)
     private String title;
 
-    //The note description
+    //The note description. For a very long one only the start is stored here, see NoteBodies.
     private String description;
 
     //The priority of the note.
     private  int priority;
 
+    // When the note was last written, in milliseconds. Set by NoteWriter on every insert and update, and
+    // never the same for two writes, so it also works as a version number for the row.
+    private long updatedAt;
+
+    // When the note was deleted, in milliseconds, or 0 if it hasn't been. A deleted note stays in the
+    // table for a while so that the delete can be undone, then NotePurger removes it.
+    private long deletedAt;
+
+    // When the note was created, in milliseconds. Set by NoteWriter when the note is inserted.
+    private long createdAt;
+
+    // Length of the full description when it is stored in note_body, or 0 when it is all in description.
+    private int bodyLength;
+
+    // ID of the note on every device it is synced to, the row ID is only local. Set by NoteWriter when the
+    // note is inserted, unless it came from the sync server and already has one.
+    private String guid;
+
+    // Version of the note on the sync server that this copy is based on, 0 if it hasn't been synced. The
+    // server takes an edit only if it was made to its latest version, see NoteSync.
+    private int version;
+
     //Constructor for the class
     public Note(String title, String description, int priority) {
         this.title = title;
@@ -34,6 +69,40 @@ public class Note {
         this.id = id;
     }
 
+    // Setter function for the last updated time
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    // Setter function for the deleted time
+    public void setDeletedAt(long deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+
+    // Setter function for the created time
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    // Setter function for the description, used to put back the full text from note_body
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    // Setter function for the stored body length
+    public void setBodyLength(int bodyLength) {
+        this.bodyLength = bodyLength;
+    }
+
+    // Setter functions for the sync fields
+    public void setGuid(String guid) {
+        this.guid = guid;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
     // Get functions to return the values of the table.
     public int getId() {
         return id;
@@ -50,4 +119,28 @@ public class Note {
     public int getPriority() {
         return priority;
     }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public long getDeletedAt() {
+        return deletedAt;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public int getBodyLength() {
+        return bodyLength;
+    }
+
+    public String getGuid() {
+        return guid;
+    }
+
+    public int getVersion() {
+        return version;
+    }
 }
@@ -5,64 +5,188 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.asynclayoutinflater.view.AsyncLayoutInflater;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.paging.PagedListAdapter;
 import androidx.recyclerview.widget.DiffUtil;
-import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 // Pass the note holder inner class, so that the adaptor knows about the note holder it needs to use.
-// List adapter is used due to ability this adds for animations etc
-public class NoteAdapter extends ListAdapter<Note, NoteAdapter.NoteHolder> {
+// Paged list adapter is used so that notes are loaded page by page as the list is scrolled, it also
+// keeps the animations etc that the list adapter gives.
+public class NoteAdapter extends PagedListAdapter<NoteSummary, NoteAdapter.NoteHolder> {
     //By passing in the note holder class above, it is automatically implemented into hte 3 override methods
 
+    // Most rows that can be pre-inflated at once, AsyncLayoutInflater's queue holds 10 and blocks the main
+    // thread when it's full
+    public static final int MAX_PRE_INFLATED = 10;
+
+    // Name the rows inflated on the main thread are recorded under in NoteMetrics
+    private static final String METRIC_INFLATE = "NoteAdapter.inflate";
+
+    // Rows inflated in the background, waiting to be used by onCreateViewHolder. Only used on the main thread.
+    private final ArrayDeque<View> preInflated = new ArrayDeque<>();
+
+    // Holders by the ID of the note they show, for rebinding notes edited in place. Holds the rows on screen
+    // and the ones in the recycler view's cache, until they are recycled. Only used on the main thread.
+    private final Map<Integer, NoteHolder> boundHolders = new HashMap<>();
+
+    // IDs of the notes picked in the list, their rows are shown as activated
+    private Set<Integer> selectedIds = Collections.emptySet();
+
     // Member variable for OnItemClickListener
     private OnItemClickListener listener;
 
-    // Constructor, just uses Diff callback variable.
-    public NoteAdapter() {
+    // Measures the row text as pages load, and the paint settings of the row text views it measures for
+    private final NoteTextLayout textLayout;
+    private PrecomputedTextCompat.Params titleParams;
+    private PrecomputedTextCompat.Params descriptionParams;
+
+    // Constructor, uses Diff callback variable. Stable IDs let the recycler view keep each note's views
+    // when the list changes, as it can match items by ID rather than by position. Takes the text layout
+    // that the pages are measured by.
+    public NoteAdapter(NoteTextLayout textLayout) {
         super(DIFF_CALLBACK);
+        this.textLayout = textLayout;
+        setHasStableIds(true);
     }
 
-    // DiffUtil comparison tool on the notes in the ListAdapter
-    private static final DiffUtil.ItemCallback<Note> DIFF_CALLBACK = new DiffUtil.ItemCallback<Note>() {
+    // DiffUtil comparison tool on the note summaries in the ListAdapter, the rules themselves are in NoteDiff
+    private static final DiffUtil.ItemCallback<NoteSummary> DIFF_CALLBACK = new DiffUtil.ItemCallback<NoteSummary>() {
         @Override
-        public boolean areItemsTheSame(@NonNull Note oldItem, @NonNull Note newItem) {
+        public boolean areItemsTheSame(@NonNull NoteSummary oldItem, @NonNull NoteSummary newItem) {
             // Only returns true if the ID's of the new item are the same
-            return oldItem.getId() == newItem.getId();
+            return NoteDiff.sameItem(oldItem, newItem);
         }
 
         @Override
-        public boolean areContentsTheSame(@NonNull Note oldItem, @NonNull Note newItem) {
-            // Only returns true if all 3 of the values (title, description, priority) are the same.
-            return oldItem.getTitle().equals(newItem.getTitle()) &&
-                    oldItem.getDescription().equals(newItem.getDescription()) && oldItem.getPriority()
-                    == newItem.getPriority();
+        public boolean areContentsTheSame(@NonNull NoteSummary oldItem, @NonNull NoteSummary newItem) {
+            // Only returns true if the note hasn't been written since the old item was loaded
+            return NoteDiff.sameContents(oldItem, newItem);
         }
     };
 
+    // The note ID is used as the stable ID of each item.
+    @Override
+    public long getItemId(int position) {
+        NoteSummary note = getItem(position);
+        return note == null ? RecyclerView.NO_ID : note.getId();
+    }
+
+    // Inflates rows on the AsyncLayoutInflater thread, so that the rows for the first screen and the first
+    // scroll are ready before they're needed rather than inflated on the main thread as they come into
+    // view. Called from MainActivity while the database is still opening.
+    public void preInflate(ViewGroup parent, int count) {
+        AsyncLayoutInflater inflater = new AsyncLayoutInflater(parent.getContext());
+        AsyncLayoutInflater.OnInflateFinishedListener listener = new AsyncLayoutInflater.OnInflateFinishedListener() {
+            @Override
+            public void onInflateFinished(@NonNull View view, int resid, @Nullable ViewGroup parent) {
+                setTextParams(view);
+                preInflated.add(view);
+            }
+        };
+        for (int i = 0; i < Math.min(count, MAX_PRE_INFLATED); i++) {
+            inflater.inflate(R.layout.note_item, parent, listener);
+        }
+    }
+
     //This method is where a NoteHolder is created and returned.
     @NonNull
     @Override
     public NoteHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        // Layout inflater takes the note item layout using the parent context and then returns this as a new NoteHolder
-        View itemView = LayoutInflater.from(parent.getContext())
-                .inflate(R.layout.note_item, parent, false);
+        // Uses a pre-inflated row if there is one left
+        View itemView = preInflated.poll();
+        if (itemView == null) {
+            // Layout inflater takes the note item layout using the parent context and then returns this as a new NoteHolder
+            long start = System.nanoTime();
+            itemView = LayoutInflater.from(parent.getContext())
+                    .inflate(R.layout.note_item, parent, false);
+            NoteMetrics.getInstance().record(METRIC_INFLATE, System.nanoTime() - start, 1);
+            setTextParams(itemView);
+        }
         return new NoteHolder(itemView);
     }
 
-    // This method is used to get the data from a Java Note object, and pass it into the views of the note holder.
+    // The first row tells the text layout how to measure the text of the pages still to load
+    private void setTextParams(View itemView) {
+        if (titleParams == null) {
+            TextView title = itemView.findViewById(R.id.text_view_title);
+            TextView description = itemView.findViewById(R.id.text_view_description);
+            titleParams = TextViewCompat.getTextMetricsParams(title);
+            descriptionParams = TextViewCompat.getTextMetricsParams(description);
+            textLayout.setTextViews(title, description);
+        }
+    }
+
+    // This method is used to get the data from a NoteSummary object, and pass it into the views of the note holder.
     @Override
     public void onBindViewHolder(@NonNull NoteHolder holder, int position) {
         // Get the current note, based on position.
-        Note currentNote = getItem(position);
-        // Set the text in the text views based on the data in the current note data calls
-        holder.textViewTitle.setText(currentNote.getTitle());
-        holder.textViewDescription.setText(currentNote.getDescription());
+        NoteSummary currentNote = getItem(position);
+        if (holder.noteId != RecyclerView.NO_ID) {
+            boundHolders.remove((int) holder.noteId);
+            holder.noteId = RecyclerView.NO_ID;
+        }
+        // The note can be null if its page hasn't loaded yet, in which case the holder is cleared.
+        if (currentNote == null) {
+            holder.itemView.setActivated(false);
+            holder.textViewTitle.setText(null);
+            holder.textViewDescription.setText(null);
+            holder.textViewPriority.setText(null);
+            return;
+        }
+        // Set the text in the text views based on the data in the current note data calls. The text was
+        // measured when its page loaded, so there's no measuring to do here.
+        NoteTextLayout.setText(holder.textViewTitle, titleParams, currentNote.getMeasuredTitle(), currentNote.getTitle());
+        NoteTextLayout.setText(holder.textViewDescription, descriptionParams, currentNote.getMeasuredDescription(),
+                currentNote.getDescriptionPreview());
         holder.textViewPriority.setText(String.valueOf(currentNote.getPriority()));
+        holder.itemView.setActivated(selectedIds.contains(currentNote.getId()));
+        holder.noteId = currentNote.getId();
+        boundHolders.put(currentNote.getId(), holder);
+    }
+
+    // The holder no longer shows its note
+    @Override
+    public void onViewRecycled(@NonNull NoteHolder holder) {
+        if (holder.noteId != RecyclerView.NO_ID && boundHolders.get((int) holder.noteId) == holder) {
+            boundHolders.remove((int) holder.noteId);
+        }
+        holder.noteId = RecyclerView.NO_ID;
+    }
+
+    // Rebinds the rows of notes that were edited in place (see NoteRepository.getPatchedNotes). The page
+    // list already holds the changed summaries, so only the rows showing them need binding again, notes
+    // without a row get their new text when they are next bound.
+    public void rebind(List<NoteSummary> notes) {
+        for (NoteSummary note : notes) {
+            NoteHolder holder = boundHolders.get(note.getId());
+            if (holder != null && holder.getAdapterPosition() != RecyclerView.NO_POSITION) {
+                notifyItemChanged(holder.getAdapterPosition());
+            }
+        }
+    }
+
+    // Shows which notes are picked. Only the bound rows are changed, others pick it up when they are bound.
+    public void setSelectedIds(Set<Integer> ids) {
+        selectedIds = ids;
+        for (Map.Entry<Integer, NoteHolder> bound : boundHolders.entrySet()) {
+            bound.getValue().itemView.setActivated(ids.contains(bound.getKey()));
+        }
     }
 
     // Used to get note from certain positions in the adapter list
-    public Note getNoteAt(int position) {
+    public NoteSummary getNoteAt(int position) {
         // Returns the note that is at the position that is passed into this method.
         return getItem(position);
     }
@@ -73,6 +197,8 @@ public class NoteAdapter extends ListAdapter<Note, NoteAdapter.NoteHolder> {
         private TextView textViewTitle;
         private TextView textViewDescription;
         private TextView textViewPriority;
+        // ID of the note the holder was last bound to, NO_ID if none
+        private long noteId = RecyclerView.NO_ID;
 
         // Constructor for the class, passes the item
         public NoteHolder(@NonNull View itemView) {
@@ -91,16 +217,38 @@ public class NoteAdapter extends ListAdapter<Note, NoteAdapter.NoteHolder> {
                     // On an item click gets the position of the note in the note array.
                     // Only runs if listener is not null and is not an invalid array position.
                     if (listener != null && position != RecyclerView.NO_POSITION) {
-                        listener.onItemClick(getItem(position));
+                        NoteSummary note = getItem(position);
+                        // Ignore clicks on items whose page hasn't loaded yet
+                        if (note != null) {
+                            listener.onItemClick(note);
+                        }
                     }
                 }
             });
+
+            // A long press picks the note, starting multi-select
+            itemView.setOnLongClickListener(new View.OnLongClickListener() {
+                @Override
+                public boolean onLongClick(View v) {
+                    int position = getAdapterPosition();
+                    if (listener != null && position != RecyclerView.NO_POSITION) {
+                        NoteSummary note = getItem(position);
+                        if (note != null) {
+                            listener.onItemLongClick(note);
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            });
         }
     }
 
     // Implementing an interface which contains onItemClick
     public interface OnItemClickListener {
-        void onItemClick(Note note);
+        void onItemClick(NoteSummary note);
+
+        void onItemLongClick(NoteSummary note);
     }
 
     // Method to set an on click listener.
@@ -0,0 +1,49 @@
+package com.example.architecturecomponents;
+
+import android.app.ActivityManager;
+import android.app.Application;
+import android.os.AsyncTask;
+import android.os.SystemClock;
+import android.util.Log;
+
+// Application class, used to get the slow parts of start up off the main thread. As soon as the process
+// starts the database is opened on a background thread, so by the time MainActivity asks for notes the
+// file is open, migrated and (on first run) seeded.
+public class NoteApplication extends Application {
+    private static final String TAG = "NoteApplication";
+    // Query threads used on low memory devices
+    private static final int LOW_RAM_QUERY_THREADS = 2;
+
+    // When the application was created, used to log how long start up took
+    private static long startTime;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        startTime = SystemClock.elapsedRealtime();
+
+        // Low memory devices get fewer query threads, each one holds its own SQLite connection and page cache.
+        ActivityManager activityManager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+        if (activityManager != null && activityManager.isLowRamDevice()) {
+            NoteDatabase.setConfig(new NoteDatabaseConfig.Builder()
+                    .setQueryThreads(LOW_RAM_QUERY_THREADS)
+                    .build());
+        }
+
+        // Runs on the shared AsyncTask pool, the main thread carries on creating the activity meanwhile.
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                NoteDatabase.prewarm(NoteApplication.this);
+            }
+        });
+    }
+
+    // Logs the time since the application was created, called for the first frame and once the first notes
+    // are shown. Also recorded in NoteMetrics as "Startup.<event>", so it is saved with the other timings.
+    public static void logStartupTime(String event) {
+        long millis = SystemClock.elapsedRealtime() - startTime;
+        Log.i(TAG, event + " " + millis + "ms after start");
+        NoteMetrics.getInstance().record("Startup." + event, millis * 1000000, 0);
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.architecturecomponents;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Splits very long descriptions out of note_table. A description longer than LARGE_LENGTH is stored in
+// note_table cut down to its first INLINE_LENGTH characters, with its full length in bodyLength, and the
+// whole of it goes to note_body compressed. Everything that reads note_table (the list, the keyset pages,
+// the purge) then only reads short rows, and the full text is only read and inflated when the note is
+// opened or exported. The search index is given the full text, see NoteFts.
+public class NoteBodies {
+    // Descriptions longer than this (in characters) are stored in note_body
+    public static final int LARGE_LENGTH = 2048;
+
+    // Characters of a long description kept in note_table, for the list preview and the search index
+    public static final int INLINE_LENGTH = 512;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // True if the description is stored in note_body
+    public static boolean isLarge(String description) {
+        return description != null && description.length() > LARGE_LENGTH;
+    }
+
+    // Returns what is stored in note_table for the description: the description itself, or the start of it
+    // for a long one. A surrogate pair is never cut in half.
+    public static String inlinePart(String description) {
+        if (!isLarge(description)) {
+            return description;
+        }
+        int end = INLINE_LENGTH;
+        if (Character.isHighSurrogate(description.charAt(end - 1))) {
+            end--;
+        }
+        return description.substring(0, end);
+    }
+
+    // Returns the value of the bodyLength column for the description, 0 if it is all in note_table
+    public static int bodyLength(String description) {
+        return isLarge(description) ? description.length() : 0;
+    }
+
+    // Returns the note as it is stored in note_table, a copy cut down to the inline part for a long
+    // description, otherwise the note itself.
+    public static Note toStored(Note note) {
+        if (!isLarge(note.getDescription())) {
+            return note;
+        }
+        Note stored = new Note(note.getTitle(), inlinePart(note.getDescription()), note.getPriority());
+        stored.setId(note.getId());
+        stored.setUpdatedAt(note.getUpdatedAt());
+        stored.setDeletedAt(note.getDeletedAt());
+        stored.setCreatedAt(note.getCreatedAt());
+        stored.setBodyLength(bodyLength(note.getDescription()));
+        stored.setGuid(note.getGuid());
+        stored.setVersion(note.getVersion());
+        return stored;
+    }
+
+    // Compresses a description for note_body.
+    public static byte[] compress(String description) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(description.getBytes(UTF_8));
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(description.length() / 2);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // Inflates a description read from note_body.
+    public static String decompress(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Note body is truncated");
+                }
+                out.write(buffer, 0, length);
+            }
+            return new String(out.toByteArray(), UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Note body is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // Replaces the cut down descriptions of the notes read from note_table with their full text from
+    // note_body, in one query. Notes without a body are left as they are. Runs on the calling thread.
+    public static void loadInto(NoteDao noteDao, List<Note> notes) {
+        List<Integer> ids = new ArrayList<>();
+        for (Note note : notes) {
+            if (note.getBodyLength() > 0) {
+                ids.add(note.getId());
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        Map<Integer, NoteBody> bodies = new HashMap<>();
+        for (NoteBody body : noteDao.getBodies(ids)) {
+            bodies.put(body.getNoteId(), body);
+        }
+        for (Note note : notes) {
+            NoteBody body = bodies.get(note.getId());
+            if (body != null) {
+                note.setDescription(decompress(body.getData()));
+            }
+        }
+    }
+
+    // Not to be created, only holds constants and helpers.
+    private NoteBodies() {
+    }
+}
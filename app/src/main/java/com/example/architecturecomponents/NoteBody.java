@@ -0,0 +1,38 @@
+package com.example.architecturecomponents;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.PrimaryKey;
+
+// The full description of a very long note, compressed, kept out of note_table so that the list and the
+// other queries on note_table don't have to read past it. note_table keeps the start of the description
+// and its full length (see NoteBodies). The row goes when its note does.
+@Entity(tableName = "note_body", foreignKeys = @ForeignKey(entity = Note.class, parentColumns = "id",
+        childColumns = "noteId", onDelete = ForeignKey.CASCADE))
+public class NoteBody {
+
+    // ID of the note the description belongs to
+    @PrimaryKey
+    private int noteId;
+
+    // The description as deflate compressed UTF-8
+    @NonNull
+    private byte[] data;
+
+    //Constructor for the class
+    public NoteBody(int noteId, @NonNull byte[] data) {
+        this.noteId = noteId;
+        this.data = data;
+    }
+
+    // Get functions to return the values of the table.
+    public int getNoteId() {
+        return noteId;
+    }
+
+    @NonNull
+    public byte[] getData() {
+        return data;
+    }
+}
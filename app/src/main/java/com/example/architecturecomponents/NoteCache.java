@@ -0,0 +1,162 @@
+package com.example.architecturecomponents;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Least recently used cache of full notes by ID, held by NoteRepository so that opening a note doesn't
+// have to go back to the database for text that was just loaded. It is limited both by the number of notes
+// and by the size of their text, whichever is reached first, and evicts the least recently used notes
+// to stay under both.
+// Loads from the database race with writes, so a load notes the cache generation before it queries and only
+// adds its notes if nothing in the cache has been changed or removed since. Otherwise a load that read a note
+// just before it changed could put the old version back after the change removed it.
+public class NoteCache {
+    // Declare the limits, the notes in access order and the text size of the notes held
+    private final int maxNotes;
+    private final long maxTextBytes;
+    private final LinkedHashMap<Integer, Note> notes = new LinkedHashMap<>(16, 0.75f, true);
+    private long textBytes;
+
+    // Goes up each time cached notes are changed or removed other than by a load
+    private long generation;
+
+    // Counters for the metrics
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    // Constructor, takes the most notes held and the most text (in bytes, at two per character) held.
+    public NoteCache(int maxNotes, long maxTextBytes) {
+        this.maxNotes = maxNotes;
+        this.maxTextBytes = maxTextBytes;
+    }
+
+    // Returns the note with the ID, or null if it isn't cached. The note is shared, it must not be changed.
+    public synchronized Note get(int id) {
+        Note note = notes.get(id);
+        if (note == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return note;
+    }
+
+    // Returns the current generation, taken before loading notes to put into the cache.
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    // Applies a write to the cached copy of the note, if there is one. The fields an update writes are taken
+    // from the note written, the rest (when it was created, its sync identity) are kept from the cached copy,
+    // so the cache never holds less than was loaded. The cache keeps its own copy, as the writer goes on to
+    // change the note it was given.
+    public synchronized void update(Note written) {
+        generation++;
+        Note cached = notes.get(written.getId());
+        if (cached == null) {
+            return;
+        }
+        Note updated = new Note(written.getTitle(), written.getDescription(), written.getPriority());
+        updated.setId(cached.getId());
+        // Not set yet when the edit has only been queued
+        updated.setUpdatedAt(written.getUpdatedAt() != 0 ? written.getUpdatedAt() : cached.getUpdatedAt());
+        updated.setDeletedAt(cached.getDeletedAt());
+        updated.setCreatedAt(cached.getCreatedAt());
+        updated.setBodyLength(NoteBodies.bodyLength(written.getDescription()));
+        updated.setGuid(cached.getGuid());
+        updated.setVersion(cached.getVersion());
+        store(updated);
+    }
+
+    // Adds a note loaded from the database, unless notes have been changed since the given generation.
+    public synchronized void putIfUnchanged(Note note, long loadGeneration) {
+        if (loadGeneration == generation) {
+            store(note);
+        }
+    }
+
+    // Removes the note with the ID, if it is cached.
+    public synchronized void remove(int id) {
+        generation++;
+        evict(id);
+    }
+
+    // Removes every note, and stops any load already under way from adding what it read.
+    public synchronized void clear() {
+        notes.clear();
+        textBytes = 0;
+        generation++;
+    }
+
+    // Returns a snapshot of the cache metrics.
+    public synchronized Stats getStats() {
+        return new Stats(notes.size(), textBytes, hits, misses, evictions);
+    }
+
+    // Adds or replaces the note, then evicts the least recently used notes until the cache is within
+    // both limits. A note too big for the cache on its own isn't added.
+    private void store(Note note) {
+        evict(note.getId());
+        long size = textBytesOf(note);
+        if (size > maxTextBytes) {
+            return;
+        }
+        notes.put(note.getId(), note);
+        textBytes += size;
+
+        Iterator<Map.Entry<Integer, Note>> eldest = notes.entrySet().iterator();
+        while (notes.size() > maxNotes || textBytes > maxTextBytes) {
+            textBytes -= textBytesOf(eldest.next().getValue());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private void evict(int id) {
+        Note removed = notes.remove(id);
+        if (removed != null) {
+            textBytes -= textBytesOf(removed);
+        }
+    }
+
+    // Size of the text of a note in memory, Java strings use two bytes per character
+    static long textBytesOf(Note note) {
+        return 2L * (length(note.getTitle()) + length(note.getDescription()));
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+
+    // Snapshot of the cache metrics.
+    public static class Stats {
+        // Notes held and the size of their text
+        public final int notes;
+        public final long textBytes;
+        // Lookups that found the note, lookups that didn't and notes evicted to stay within the limits
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+
+        private Stats(int notes, long textBytes, long hits, long misses, long evictions) {
+            this.notes = notes;
+            this.textBytes = textBytes;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        // Share of lookups that found the note
+        public double getHitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        @Override
+        public String toString() {
+            return "notes=" + notes + " textBytes=" + textBytes + " hits=" + hits + " misses=" + misses
+                    + " evictions=" + evictions;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.architecturecomponents;
+
+import java.util.Collections;
+import java.util.List;
+
+// One kind of change to the note table, committed by NoteWriter. The writer reports the changes of each
+// transaction once it has been committed, so whoever is listening knows which rows changed and how rather
+// than only that the table changed, which is all Room's InvalidationTracker says.
+public class NoteChange {
+    // Notes added
+    public static final int INSERTED = 0;
+    // Notes edited, the change holds the notes as written
+    public static final int UPDATED = 1;
+    // Notes marked as deleted, or brought back
+    public static final int DELETED = 2;
+    public static final int RESTORED = 3;
+    // Rows removed for good, either deleted notes whose undo time is up or (REMOVED) any notes, when every
+    // note is being deleted. There are no IDs, as the DAO only says how many rows went.
+    public static final int PURGED = 4;
+    public static final int REMOVED = 5;
+    // Notes given a new priority together (picked in the list). Only the IDs, the rest of each note isn't
+    // read, so the list reloads rather than patching them.
+    public static final int PRIORITY_SET = 6;
+    // Notes given a new server version by a sync, pushed or pulled. Only the IDs, nothing the list shows
+    // changes, but a full note held elsewhere (such as the note cache) no longer has the current version.
+    public static final int VERSIONED = 7;
+
+    // The kind of change, the notes written (inserts and updates only) and the IDs of the notes changed
+    public final int type;
+    public final List<Note> notes;
+    public final List<Integer> ids;
+
+    public NoteChange(int type, List<Note> notes, List<Integer> ids) {
+        this.type = type;
+        this.notes = Collections.unmodifiableList(notes);
+        this.ids = Collections.unmodifiableList(ids);
+    }
+}
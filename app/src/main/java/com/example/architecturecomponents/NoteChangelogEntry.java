@@ -0,0 +1,39 @@
+package com.example.architecturecomponents;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+// A note changed since it was last pushed to the sync server. NoteWriter adds a row for every note it
+// writes, in the same transaction as the write, and NoteSync removes the rows once they have been pushed.
+// So a sync only reads the notes that changed rather than the whole table. A note changed several times
+// has several rows but is only pushed once, as it is now.
+@Entity(tableName = "note_changelog", indices = @Index(value = {"guid"}))
+public class NoteChangelogEntry {
+
+    // Order the changes were made in, a push removes every row up to the last one it sent
+    @PrimaryKey(autoGenerate = true)
+    private long seq;
+
+    // guid of the note changed. Kept rather than the row ID, so a note deleted for good since it was
+    // changed can still be pushed as deleted.
+    @NonNull
+    private String guid;
+
+    //Constructor for the class
+    public NoteChangelogEntry(long seq, @NonNull String guid) {
+        this.seq = seq;
+        this.guid = guid;
+    }
+
+    // Get functions to return the values of the table.
+    public long getSeq() {
+        return seq;
+    }
+
+    @NonNull
+    public String getGuid() {
+        return guid;
+    }
+}
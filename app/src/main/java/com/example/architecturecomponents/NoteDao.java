@@ -6,12 +6,24 @@ import androidx.lifecycle.LiveData;
 import androidx.room.Dao;
 import androidx.room.Delete;
 import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.RawQuery;
 import androidx.room.Update;
+import androidx.sqlite.db.SupportSQLiteQuery;
 
 // This class is the Data Access Object for the Note entity
 @Dao
 public interface NoteDao {
+    // Most IDs passed to one of the "IN (:ids)" queries at a time. Each ID is a bound variable, and SQLite
+    // refuses statements with more than 999 of them, so longer lists are split into chunks of this many by
+    // the caller (leaving room for the query's other arguments).
+    int MAX_IDS_PER_QUERY = 900;
+
+    // Columns selected for a NoteSummary, only the start of the description is read into the cursor.
+    String SUMMARY_COLUMNS = "id, title, priority, updatedAt, createdAt, substr(description, 1, "
+            + NoteSummary.PREVIEW_LENGTH + ") AS descriptionPreview";
+
     // Due to being an interface, no method body is provided.
     // @ insert the relevant functionality from the room component.
     @Insert
@@ -25,14 +37,161 @@ public interface NoteDao {
     @Delete
     void delete(Note note);
 
-    // Used to delete all notes, uses a custom query to do so. Note the SQL highlighting thanks to
-    // the room component.
-    @Query("DELETE FROM note_table")
-    void deleteAllNotes();
+    // Bulk version of the above, used by NoteWriter to insert a batch of notes in one statement. Returns
+    // the IDs given to the notes, in order.
+    @Insert
+    long[] insertNotes(List<Note> notes);
+
+    // Changes the text and priority of a note, used by NoteWriter for edits. Only the columns an edit can
+    // change are written, so the created and deleted times are left as they are.
+    @Query("UPDATE note_table SET title = :title, description = :description, priority = :priority, " +
+            "updatedAt = :updatedAt, bodyLength = :bodyLength WHERE id = :id")
+    void updateNote(int id, String title, String description, int priority, long updatedAt, int bodyLength);
+
+    // Update a single field of a note, used when only that field was edited so the others aren't rewritten
+    @Query("UPDATE note_table SET title = :title, updatedAt = :updatedAt WHERE id = :id")
+    void updateTitle(int id, String title, long updatedAt);
+
+    @Query("UPDATE note_table SET description = :description, bodyLength = :bodyLength, updatedAt = :updatedAt " +
+            "WHERE id = :id")
+    void updateDescription(int id, String description, int bodyLength, long updatedAt);
+
+    @Query("UPDATE note_table SET priority = :priority, updatedAt = :updatedAt WHERE id = :id")
+    void updatePriority(int id, int priority, long updatedAt);
+
+    // Gives every note with one of the IDs the same priority, used to change the priority of the notes
+    // picked in the list. At most MAX_IDS_PER_QUERY IDs at a time.
+    @Query("UPDATE note_table SET priority = :priority, updatedAt = :updatedAt WHERE id IN (:ids)")
+    void setPriority(List<Integer> ids, int priority, long updatedAt);
+
+    // Adds or replaces the full descriptions of long notes, see NoteBodies.
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertBodies(List<NoteBody> bodies);
+
+    // Puts the full description of a long note in the search index, in place of the start of it that the
+    // note_table triggers index, see NoteFts.
+    @Query("UPDATE note_fts SET description = :description WHERE rowid = :id")
+    void indexDescription(int id, String description);
+
+    // Removes the full descriptions kept for the notes with the given IDs, used once a note's description
+    // is short enough to be stored in note_table again.
+    @Query("DELETE FROM note_body WHERE noteId IN (:ids)")
+    void deleteBodies(List<Integer> ids);
+
+    // Gets the full descriptions of the notes with the given IDs that have one.
+    @Query("SELECT * FROM note_body WHERE noteId IN (:ids)")
+    List<NoteBody> getBodies(List<Integer> ids);
+
+    // Used to delete all notes a chunk at a time, uses a custom query to do so. Note the SQL highlighting
+    // thanks to the room component. Deleted notes are removed too. Returns how many were removed. The
+    // chunk is the lowest IDs, the same notes getFirstGuids returns.
+    @Query("DELETE FROM note_table WHERE id IN (SELECT id FROM note_table ORDER BY id LIMIT :limit)")
+    int deleteNotes(int limit);
+
+    // Gets the guids of the next chunk deleteNotes will remove, so the deletes can be logged for sync first
+    @Query("SELECT guid FROM note_table ORDER BY id LIMIT :limit")
+    List<String> getFirstGuids(int limit);
+
+    // Counts every note, deleted or not, used to show the progress of deleting them all.
+    @Query("SELECT COUNT(*) FROM note_table")
+    int countNotes();
+
+    // Number of notes at each priority that has any, lowest priority first, read from the counts kept by
+    // triggers rather than by counting note_table. Deleted notes aren't counted.
+    @Query("SELECT * FROM priority_count WHERE notes > 0 ORDER BY priority")
+    LiveData<List<NotePriorityCount>> getPriorityCounts();
+
+    // Number of notes that aren't deleted, the sum of the priority counts
+    @Query("SELECT IFNULL(SUM(notes), 0) FROM priority_count")
+    LiveData<Integer> getNoteCount();
+
+    // Gets a page of the note list, using a query built by NoteListQuery for the sort order and filter
+    // picked. The queries page through the notes using the last loaded note as the key (keyset
+    // pagination), rather than OFFSET which has to step over every row before the page, so each call only
+    // ever reads "limit" rows however big the table gets. Notes waiting to be purged are left out.
+    @RawQuery
+    List<NoteSummary> getNotes(SupportSQLiteQuery query);
+
+    // Finds the notes whose title or description match the FTS expression, using the note_fts index. Only
+    // the note ID and the matchinfo needed to rank the hit are returned, see NoteSearchRanker. Deleted notes
+    // are still in the FTS index until they are purged, so they are left out using the deletedAt index.
+    // Every hit is returned, SQLite has no idea of the ranking so a LIMIT here would cut off arbitrary hits
+    // rather than the worst ones. The rows are small, the ranker caps the results once they are ranked.
+    @Query("SELECT rowid AS id, matchinfo(note_fts, 'pcx') AS matchInfo FROM note_fts " +
+            "WHERE note_fts MATCH :matchExpression " +
+            "AND rowid NOT IN (SELECT id FROM note_table WHERE deletedAt > 0)")
+    List<NoteMatch> searchMatches(String matchExpression);
+
+    // Gets the IDs of the notes in the list, using a query built by NoteListQuery.ids. Used to pick every
+    // note in the list at once.
+    @RawQuery
+    List<Integer> getIds(SupportSQLiteQuery query);
+
+    // Gets the summaries of the notes with the given IDs, in no particular order.
+    @Query("SELECT " + SUMMARY_COLUMNS + " FROM note_table WHERE id IN (:ids)")
+    List<NoteSummary> getSummariesByIds(List<Integer> ids);
+
+    // Gets the note with the given ID, used when a note is opened for editing. Returns null if there is no
+    // such note. A long description is cut down, see NoteBodies.loadInto. Runs on the calling thread,
+    // NoteRepository calls it on a background thread.
+    @Query("SELECT * FROM note_table WHERE id = :id")
+    Note getNoteById(int id);
+
+    // Marks the notes with the given IDs as deleted, they disappear from the list but can still be restored.
+    // Like restoreNotes, at most MAX_IDS_PER_QUERY IDs at a time.
+    @Query("UPDATE note_table SET deletedAt = :deletedAt WHERE id IN (:ids)")
+    void markNotesDeleted(List<Integer> ids, long deletedAt);
+
+    // Brings back notes marked as deleted, used to undo a delete.
+    @Query("UPDATE note_table SET deletedAt = 0 WHERE id IN (:ids)")
+    void restoreNotes(List<Integer> ids);
+
+    // Removes up to "limit" of the notes deleted at or before the cutoff for good, returns how many were
+    // removed. The limit keeps each purge transaction short.
+    @Query("DELETE FROM note_table WHERE id IN " +
+            "(SELECT id FROM note_table WHERE deletedAt > 0 AND deletedAt <= :cutoff LIMIT :limit)")
+    int purgeDeletedNotes(long cutoff, int limit);
+
+    // Gets when the longest waiting deleted note was deleted, or null if there are none.
+    @Query("SELECT MIN(deletedAt) FROM note_table WHERE deletedAt > 0")
+    Long getOldestDeletedAt();
+
+    // Gets the guids of the notes with the given IDs, at most MAX_IDS_PER_QUERY at a time. Used by
+    // NoteWriter to log the notes it writes in note_changelog.
+    @Query("SELECT guid FROM note_table WHERE id IN (:ids)")
+    List<String> getGuids(List<Integer> ids);
+
+    // Logs changed notes to be pushed by the next sync.
+    @Insert
+    void insertChangelog(List<NoteChangelogEntry> entries);
+
+    // Gets the oldest "limit" changes waiting to be pushed.
+    @Query("SELECT * FROM note_changelog ORDER BY seq LIMIT :limit")
+    List<NoteChangelogEntry> getChangelog(int limit);
+
+    // Removes the changes up to and including seq, once they have been pushed.
+    @Query("DELETE FROM note_changelog WHERE seq <= :seq")
+    void deleteChangelog(long seq);
+
+    // Gets which of the guids have changes waiting to be pushed, at most MAX_IDS_PER_QUERY at a time.
+    @Query("SELECT DISTINCT guid FROM note_changelog WHERE guid IN (:guids)")
+    List<String> getChangedGuids(List<String> guids);
+
+    // Gets the notes with the given guids, deleted or not, at most MAX_IDS_PER_QUERY at a time. Long
+    // descriptions are cut down, see NoteBodies.loadInto.
+    @Query("SELECT * FROM note_table WHERE guid IN (:guids)")
+    List<Note> getNotesByGuids(List<String> guids);
+
+    // Gets the IDs of the notes with the given guids, at most MAX_IDS_PER_QUERY at a time.
+    @Query("SELECT id FROM note_table WHERE guid IN (:guids)")
+    List<Integer> getIdsByGuids(List<String> guids);
+
+    // Sets the server version a note is based on, once it has been pushed or pulled.
+    @Query("UPDATE note_table SET version = :version WHERE guid = :guid")
+    void setVersion(String guid, int version);
 
-    // Gets all the notes by order of priority, in descending order
-    @Query("SELECT * FROM note_table ORDER BY priority DESC")
-    //Returns Notes as a list via the getAllNotes() function
-    // Live data can be implemented via Room, which means any changes will automatically be noticed and applied.
-    LiveData<List<Note>> getAllNotes();
+    // Gets the notes after the given ID in ID order, used to read the whole table a chunk at a time.
+    // Deleted notes are skipped. Long descriptions are cut down, see NoteBodies.loadInto.
+    @Query("SELECT * FROM note_table WHERE id > :id AND deletedAt = 0 ORDER BY id LIMIT :limit")
+    List<Note> getNotesAfterId(int id, int limit);
 }
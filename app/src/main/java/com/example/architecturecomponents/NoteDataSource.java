@@ -0,0 +1,157 @@
+package com.example.architecturecomponents;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.MutableLiveData;
+import androidx.paging.ItemKeyedDataSource;
+
+// Data source used by the paged note list. It is item keyed, meaning that the next/previous page is
+// found using the sort value and ID of the note at the edge of the loaded list (keyset pagination)
+// instead of an OFFSET, so loading a page costs the same at the top of the list as at the bottom.
+// The sort order and filter come from the NoteListQuery, which builds the queries.
+// Changes come from the NoteWriter rather than Room's InvalidationTracker, which only says that the table
+// changed. An edit to a loaded note that leaves it in the same place is applied to the loaded summary, so
+// the list only rebinds that row. Anything else (a new, deleted or moved note) invalidates the data source
+// and the list reloads the pages around the current position.
+public class NoteDataSource extends ItemKeyedDataSource<NoteSummary, NoteSummary> {
+    // Name the in place edits are recorded under in NoteMetrics
+    private static final String METRIC_PATCH = "NoteDataSource.patch";
+
+    // Declare the DAO, the sort order and filter, and the writer listener used to spot changes.
+    private final NoteDao noteDao;
+    private final NoteListQuery query;
+    private final NoteWriter writer;
+    private final NoteWriter.ChangeListener listener;
+
+    // The summaries handed to the list so far by ID, filled on the paging threads and read on the writer thread
+    private final Map<Integer, NoteSummary> loaded = new ConcurrentHashMap<>();
+
+    // Constructor, takes the database to read from, the writer whose changes it follows, the sort order and
+    // filter of the list and the LiveData that gets the summaries edited in place.
+    public NoteDataSource(NoteDatabase database, NoteWriter writer, NoteListQuery query,
+                          final MutableLiveData<List<NoteSummary>> patched) {
+        this.writer = writer;
+        this.query = query;
+        noteDao = database.timedNoteDao();
+
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        listener = new NoteWriter.ChangeListener() {
+            @Override
+            public void onChanges(List<NoteChange> changes) {
+                final List<Note> updates = findUpdatesInPlace(changes);
+                if (updates == null) {
+                    invalidate();
+                    return;
+                }
+                if (updates.isEmpty()) {
+                    return;
+                }
+                // The summaries belong to the list, so they are only changed on the main thread
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isInvalid()) {
+                            return;
+                        }
+                        long start = System.nanoTime();
+                        List<NoteSummary> changed = new ArrayList<>(updates.size());
+                        for (Note note : updates) {
+                            NoteSummary summary = loaded.get(note.getId());
+                            summary.applyUpdate(note);
+                            changed.add(summary);
+                        }
+                        NoteMetrics.getInstance().record(METRIC_PATCH, System.nanoTime() - start, changed.size());
+                        patched.setValue(changed);
+                    }
+                });
+            }
+        };
+        writer.addChangeListener(listener);
+
+        // Stop listening once invalidated, otherwise old data sources would never be let go.
+        addInvalidatedCallback(new InvalidatedCallback() {
+            @Override
+            public void onInvalidated() {
+                NoteDataSource.this.writer.removeChangeListener(listener);
+            }
+        });
+    }
+
+    // Returns the notes of the changes if every change is an edit that keeps a loaded note where it is,
+    // otherwise null for a reload. Removing deleted notes for good, or a sync setting their server version,
+    // changes nothing the list shows.
+    private List<Note> findUpdatesInPlace(List<NoteChange> changes) {
+        List<Note> updates = new ArrayList<>();
+        for (NoteChange change : changes) {
+            if (change.type == NoteChange.PURGED || change.type == NoteChange.VERSIONED) {
+                continue;
+            }
+            if (change.type != NoteChange.UPDATED) {
+                return null;
+            }
+            for (Note note : change.notes) {
+                NoteSummary summary = loaded.get(note.getId());
+                if (summary == null || !query.keepsPosition(summary, note)) {
+                    return null;
+                }
+                updates.add(note);
+            }
+        }
+        return updates;
+    }
+
+    // Remembers the summaries about to be handed to the list
+    private void remember(List<NoteSummary> notes) {
+        for (NoteSummary note : notes) {
+            loaded.put(note.getId(), note);
+        }
+    }
+
+    // Loads the first page. If there is a key (the list is being reloaded after a change) then the
+    // page starts at that note, otherwise it starts at the top of the list.
+    @Override
+    public void loadInitial(@NonNull LoadInitialParams<NoteSummary> params, @NonNull LoadInitialCallback<NoteSummary> callback) {
+        NoteSummary key = params.requestedInitialKey;
+        List<NoteSummary> notes;
+        if (key == null) {
+            notes = noteDao.getNotes(query.first(params.requestedLoadSize));
+        } else {
+            notes = noteDao.getNotes(query.from(key, params.requestedLoadSize));
+        }
+        remember(notes);
+        callback.onResult(notes);
+    }
+
+    // Loads the page after the given note, used when scrolling down.
+    @Override
+    public void loadAfter(@NonNull LoadParams<NoteSummary> params, @NonNull LoadCallback<NoteSummary> callback) {
+        List<NoteSummary> notes = noteDao.getNotes(query.after(params.key, params.requestedLoadSize));
+        remember(notes);
+        callback.onResult(notes);
+    }
+
+    // Loads the page before the given note, used when scrolling up after a reload.
+    @Override
+    public void loadBefore(@NonNull LoadParams<NoteSummary> params, @NonNull LoadCallback<NoteSummary> callback) {
+        List<NoteSummary> notes = noteDao.getNotes(query.before(params.key, params.requestedLoadSize));
+        // The query returns the closest notes first, so flip them back into list order.
+        Collections.reverse(notes);
+        remember(notes);
+        callback.onResult(notes);
+    }
+
+    // The note summary itself is used as the key, as it holds both the sort value and the ID.
+    @NonNull
+    @Override
+    public NoteSummary getKey(@NonNull NoteSummary item) {
+        return item;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.architecturecomponents;
+
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.paging.DataSource;
+
+// Factory used by the paged list builder to create a new NoteDataSource each time the previous one
+// is invalidated by a change to the note table.
+public class NoteDataSourceFactory extends DataSource.Factory<NoteSummary, NoteSummary> {
+    // Declare the database the data sources read from, the writer they follow, the sort order and filter and
+    // where they post notes edited in place, which is this list's own
+    private final NoteDatabase database;
+    private final NoteWriter writer;
+    private final NoteListQuery query;
+    private final MutableLiveData<List<NoteSummary>> patched = new MutableLiveData<>();
+
+    // Constructor, takes the database instance, the writer and the sort order and filter
+    public NoteDataSourceFactory(NoteDatabase database, NoteWriter writer, NoteListQuery query) {
+        this.database = database;
+        this.writer = writer;
+        this.query = query;
+    }
+
+    // Returns the LiveData of the notes of this list edited in place by its data sources
+    public LiveData<List<NoteSummary>> getPatchedNotes() {
+        return patched;
+    }
+
+    // Creates a fresh data source
+    @NonNull
+    @Override
+    public DataSource<NoteSummary, NoteSummary> create() {
+        return new NoteDataSource(database, writer, query, patched);
+    }
+}
@@ -1,7 +1,20 @@
 package com.example.architecturecomponents;
 
+import android.content.ContentValues;
 import android.content.Context;
-import android.os.AsyncTask;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import androidx.annotation.NonNull;
 import androidx.room.Database;
@@ -9,64 +22,167 @@ import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.sqlite.db.SupportSQLiteDatabase;
 
-// Declared as a database via the Room annotation, uses the Note.java as the entity and version is set to 1
+// Declared as a database via the Room annotation, uses the Note.java as the entity along with its full text
+// search table NoteFts, the table of long descriptions NoteBody, the per priority note counts
+// NotePriorityCount and the notes waiting to be synced NoteChangelogEntry. The version is bumped
+// on every schema change, with a matching migration in NoteMigrations, and the schema is exported to
+// app/schemas so the migrations can be tested.
 // Abstract class because I'm not providing the method bodies.
-@Database(entities = {Note.class}, version = 1, exportSchema = false)
+@Database(entities = {Note.class, NoteFts.class, NoteBody.class, NotePriorityCount.class,
+        NoteChangelogEntry.class}, version = 11)
 public abstract class NoteDatabase extends RoomDatabase {
 
-    // Variable for creating a singleton of this class - singleton means that the class can't be used
-    // multiple times, only allows one to exist at a time.
-    private static NoteDatabase instance;
+    private static final String TAG = "NoteDatabase";
+    // Value of PRAGMA auto_vacuum for incremental mode
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    // Notes added when the database is first created
+    private static final String[][] SEED_NOTES = {
+            {"Title 1", "Description 1", "1"},
+            {"Title 2", "Description 2", "2"},
+            {"Title 3", "Description 3", "3"},
+    };
+
+    // Holds the single instance of this class once it has been built. An atomic reference rather than a
+    // synchronized method, so getting the instance never takes a lock once it exists (the usual case, as
+    // NoteApplication builds it at start up).
+    private static final AtomicReference<NoteDatabase> instance = new AtomicReference<>();
+
+    // Settings the instance is built with, can only be changed before it is built
+    private static volatile NoteDatabaseConfig config = new NoteDatabaseConfig.Builder().build();
 
     //Used to access the DAO later on, body not provided because Room inserts the code for this.
     // This method will be used to access the Access objects
     public abstract NoteDao noteDao();
 
-    // Synchronized means that only one thread can access this method at a time, this method is used
-    // to get the current instance of the database
-    public static synchronized NoteDatabase getInstance(Context context) {
-        // Only creates the database if there isn't already one.
-        if (instance == null) {
+    // The DAO wrapped so that every call is timed in NoteMetrics, set when the instance is built
+    private NoteDao timedNoteDao;
+
+    // Returns the DAO that the rest of the app uses, the same as noteDao() but with every call timed.
+    public NoteDao timedNoteDao() {
+        return timedNoteDao;
+    }
+
+    // Sets the journal mode and query thread count used to build the database. Must be called before the
+    // first getInstance, as those can't be changed on an open database.
+    public static void setConfig(NoteDatabaseConfig newConfig) {
+        if (instance.get() != null) {
+            throw new IllegalStateException("NoteDatabase has already been built");
+        }
+        config = newConfig;
+    }
+
+    // Returns the instance of the database, building it the first time. Safe to call from any thread.
+    public static NoteDatabase getInstance(Context context) {
+        NoteDatabase database = instance.get();
+        if (database == null) {
             // Rather than call "new NoteDatabase" a builder needs to be used, due to the abstract class
             // Uses the application context, takes the NoteDatabase class, sets the name to "note_database" and
-            // then uses fallbackToDestructiveMigration to destroy and recreate the schema, then builds.
-            instance = Room.databaseBuilder(context.getApplicationContext(), NoteDatabase.class, "note_database")
-                    .fallbackToDestructiveMigration()
+            // then adds the migrations so that upgrading keeps the user's notes, then builds.
+            // The journal mode is set rather than left to Room, and queries (the list, search and editor loads)
+            // get their own threads, so a list refresh never waits in line behind a bulk write. The writes run
+            // on NoteWriter's thread. No transaction executor is set, so Room uses the query pool for that as
+            // well, but it only runs Rx and coroutine transactions, which the app has none of.
+            // The open helper turns on incremental auto vacuum before the tables are created.
+            // Building doesn't open the database file or start any threads, so if two threads get here at
+            // once the one that loses simply drops its copy and uses the winner's.
+            NoteDatabaseConfig buildConfig = config;
+            NoteDatabase built = Room.databaseBuilder(context.getApplicationContext(), NoteDatabase.class, "note_database")
+                    .addMigrations(NoteMigrations.ALL)
                     .addCallback(roomCallback)
+                    .openHelperFactory(new NoteOpenHelperFactory())
+                    .setJournalMode(buildConfig.getJournalMode())
+                    .setQueryExecutor(newExecutor("NoteQuery", buildConfig.getQueryThreads()))
                     .build();
+            // Set before the instance is published, so any thread that gets the instance sees it
+            built.timedNoteDao = NoteMetrics.getInstance().instrument(NoteDao.class, built.noteDao(), "NoteDao");
+            database = instance.compareAndSet(null, built) ? built : instance.get();
+        }
+        return database;
+    }
+
+    // Builds a database held in memory, set up like the instance (triggers, seed notes and the timed DAO) but
+    // never shared, so a test can give a NoteWriter a database of its own. Not used by the app.
+    static NoteDatabase inMemory(Context context) {
+        NoteDatabase built = Room.inMemoryDatabaseBuilder(context.getApplicationContext(), NoteDatabase.class)
+                .addCallback(roomCallback)
+                .openHelperFactory(new NoteOpenHelperFactory())
+                .build();
+        built.timedNoteDao = NoteMetrics.getInstance().instrument(NoteDao.class, built.noteDao(), "NoteDao");
+        return built;
+    }
+
+    // Opens the database (creating or migrating it if needed) so that the first query doesn't have to.
+    // Slow, must not be called on the main thread.
+    public static void prewarm(Context context) {
+        long start = SystemClock.elapsedRealtime();
+        getInstance(context).getOpenHelper().getWritableDatabase();
+        Log.i(TAG, "Database opened in " + (SystemClock.elapsedRealtime() - start) + "ms");
+    }
+
+    // Incremental auto vacuum lets NoteWriter give the space freed by deleting notes back a chunk at a
+    // time, rather than the file staying at its biggest size. A database created since NoteOpenHelperFactory
+    // starts out in it, but an older one can only be switched by a full VACUUM, which copies the whole file
+    // and holds up every write while it runs. So it isn't done at start up, only here, which
+    // NoteRepository.deleteAllNotes calls once every note is gone and there is next to nothing left to copy.
+    // Returns true if the database was switched. Must not be called on the main thread, or in a transaction.
+    public boolean enableIncrementalVacuum() {
+        SupportSQLiteDatabase db = getOpenHelper().getWritableDatabase();
+        try (Cursor cursor = db.query("PRAGMA auto_vacuum")) {
+            if (cursor.moveToFirst() && cursor.getInt(0) == AUTO_VACUUM_INCREMENTAL) {
+                return false;
+            }
         }
-        // Returns the instance, if one already exists simply returns the already created instance.
-        return instance;
+        long start = SystemClock.elapsedRealtime();
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        db.execSQL("VACUUM");
+        Log.i(TAG, "Switched to incremental auto vacuum in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        return true;
+    }
+
+    // Creates a pool with a fixed number of named threads. The threads are only started once there is work,
+    // and stop again after a minute with nothing to do.
+    private static Executor newExecutor(final String name, int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                return new Thread(runnable, name + "-" + count.incrementAndGet());
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     // Database callback method
     private static RoomDatabase.Callback roomCallback = new RoomDatabase.Callback() {
-        // Runs on create
+        // Runs on create, inside the transaction that creates the tables. The seed notes are inserted
+        // straight into that transaction, so they are committed along with the tables in one go and are
+        // there before the first query runs (rather than arriving later from a separate task).
         @Override
         public void onCreate(@NonNull SupportSQLiteDatabase db) {
             super.onCreate(db);
-            // Runs the async task to populate the database, takes the instance of the database.
-            new PopulateDbAsyncTask(instance).execute();
+            // The triggers go first, so they count the seed notes
+            NoteMigrations.createFtsTriggers(db);
+            NoteMigrations.createPriorityCounts(db);
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < SEED_NOTES.length; i++) {
+                ContentValues values = new ContentValues();
+                values.put("title", SEED_NOTES[i][0]);
+                values.put("description", SEED_NOTES[i][1]);
+                values.put("priority", Integer.parseInt(SEED_NOTES[i][2]));
+                values.put("updatedAt", now + i);
+                values.put("deletedAt", 0);
+                values.put("createdAt", now + i);
+                values.put("bodyLength", 0);
+                values.put("guid", UUID.randomUUID().toString());
+                values.put("version", 0);
+                db.insert("note_table", SQLiteDatabase.CONFLICT_ABORT, values);
+            }
+            // Logged so the first sync pushes them, like notes written through NoteWriter
+            NoteMigrations.logExistingNotes(db);
         }
     };
-
-    // Async task used to populate the database upon creation.
-    private static class PopulateDbAsyncTask extends AsyncTask<Void, Void, Void> {
-        // Declare instance of NoteDao
-        private NoteDao noteDao;
-
-        // Construct noteDao, gets the noteDao from the database instance
-        private PopulateDbAsyncTask(NoteDatabase db) {
-            noteDao = db.noteDao();
-        }
-
-        // Inserts 3 different notes into the database to start with
-        @Override
-        protected Void doInBackground(Void... voids) {
-            noteDao.insert(new Note("Title 1", "Description 1", 1));
-            noteDao.insert(new Note("Title 2", "Description 2", 2));
-            noteDao.insert(new Note("Title 3", "Description 3", 3));
-            return null;
-        }
-    }
 }
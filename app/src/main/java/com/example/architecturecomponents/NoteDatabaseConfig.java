@@ -0,0 +1,54 @@
+package com.example.architecturecomponents;
+
+import androidx.room.RoomDatabase;
+
+// Settings used to build NoteDatabase: the journal mode and the number of threads running queries. Created
+// with the Builder, the defaults suit the app, and passed to NoteDatabase.setConfig before the database is
+// first used. There is no setting for the writes, they all run on NoteWriter's one thread.
+public class NoteDatabaseConfig {
+    // Write-ahead logging lets the list keep reading while the writer is committing a large batch, rather
+    // than readers and the writer taking turns on the whole file.
+    public static final RoomDatabase.JournalMode DEFAULT_JOURNAL_MODE = RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING;
+    // Enough query threads for the list, a search and an editor load to run at once
+    public static final int DEFAULT_QUERY_THREADS = 3;
+
+    private final RoomDatabase.JournalMode journalMode;
+    private final int queryThreads;
+
+    private NoteDatabaseConfig(Builder builder) {
+        journalMode = builder.journalMode;
+        queryThreads = builder.queryThreads;
+    }
+
+    // Get functions to return the values.
+    public RoomDatabase.JournalMode getJournalMode() {
+        return journalMode;
+    }
+
+    public int getQueryThreads() {
+        return queryThreads;
+    }
+
+    // Builds a config, anything not set keeps its default.
+    public static class Builder {
+        private RoomDatabase.JournalMode journalMode = DEFAULT_JOURNAL_MODE;
+        private int queryThreads = DEFAULT_QUERY_THREADS;
+
+        public Builder setJournalMode(RoomDatabase.JournalMode journalMode) {
+            this.journalMode = journalMode;
+            return this;
+        }
+
+        public Builder setQueryThreads(int queryThreads) {
+            if (queryThreads < 1) {
+                throw new IllegalArgumentException("Need at least one query thread");
+            }
+            this.queryThreads = queryThreads;
+            return this;
+        }
+
+        public NoteDatabaseConfig build() {
+            return new NoteDatabaseConfig(this);
+        }
+    }
+}
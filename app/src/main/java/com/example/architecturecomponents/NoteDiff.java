@@ -0,0 +1,21 @@
+package com.example.architecturecomponents;
+
+// The rules used by NoteAdapter to tell how the note list has changed. They are kept apart from the
+// adapter, which is Android only, so they can be measured by the benchmark module on a plain JVM.
+public class NoteDiff {
+
+    // Two items are the same note if they have the same ID.
+    public static boolean sameItem(NoteSummary oldItem, NoteSummary newItem) {
+        return oldItem.getId() == newItem.getId();
+    }
+
+    // Every write to a note gives it a new updatedAt, so comparing that one number tells if anything
+    // changed, without comparing the text.
+    public static boolean sameContents(NoteSummary oldItem, NoteSummary newItem) {
+        return oldItem.getUpdatedAt() == newItem.getUpdatedAt();
+    }
+
+    // Not to be created, only holds static methods.
+    private NoteDiff() {
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.architecturecomponents;
+
+import androidx.room.Entity;
+import androidx.room.Fts4;
+
+// Full text search table for the notes. It holds its own copy of the text rather than reading it from
+// note_table, because a long description is only stored in note_table cut down to its start (see NoteBodies)
+// and the whole of it has to be searchable. Triggers on note_table (NoteMigrations.createFtsTriggers) index
+// what is written there on every insert, update and delete, and NoteWriter then puts in the full text of
+// long descriptions. The rowid of each entry is the ID of its note.
+@Fts4
+@Entity(tableName = "note_fts")
+public class NoteFts {
+
+    // The indexed note title
+    private String title;
+
+    // The indexed note description
+    private String description;
+
+    //Constructor for the class
+    public NoteFts(String title, String description) {
+        this.title = title;
+        this.description = description;
+    }
+
+    // Get functions to return the values of the table.
+    public String getTitle() {
+        return title;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.architecturecomponents;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+// What the note list shows: the sort order and the range of priorities shown. Builds the keyset paging
+// queries for NoteDataSource, each of which only reads "limit" rows by walking the index for the sort
+// order, however far down the list the page is. The keyset WHERE is spelled out rather than using row
+// values such as (a, b) < (?, ?), which the SQLite on older Android versions doesn't support.
+// Immutable, so it can be compared to tell whether the list needs reloading.
+public class NoteListQuery {
+    // Lowest and highest priority a note can have
+    public static final int MIN_PRIORITY = 1;
+    public static final int MAX_PRIORITY = 10;
+
+    // Priority order with every note, what the list shows until something else is picked
+    public static final NoteListQuery DEFAULT = new NoteListQuery(NoteSort.PRIORITY, MIN_PRIORITY, MAX_PRIORITY);
+
+    // Declare the sort order and the priority range
+    private final NoteSort sort;
+    private final int minPriority;
+    private final int maxPriority;
+
+    // Constructor, takes the sort order and the lowest and highest priority shown
+    public NoteListQuery(NoteSort sort, int minPriority, int maxPriority) {
+        this.sort = sort;
+        this.minPriority = minPriority;
+        this.maxPriority = maxPriority;
+    }
+
+    // Returns a copy with a different sort order
+    public NoteListQuery withSort(NoteSort sort) {
+        return new NoteListQuery(sort, minPriority, maxPriority);
+    }
+
+    // Returns a copy with a different priority range
+    public NoteListQuery withPriorities(int minPriority, int maxPriority) {
+        return new NoteListQuery(sort, minPriority, maxPriority);
+    }
+
+    public NoteSort getSort() {
+        return sort;
+    }
+
+    public int getMinPriority() {
+        return minPriority;
+    }
+
+    public int getMaxPriority() {
+        return maxPriority;
+    }
+
+    // Whether the list still shows the loaded note in the same place after it was changed to the updated
+    // one, in which case the row can be changed where it is rather than reloading the list. The updated
+    // note has to stay within the priority range and keep its sort value. Sorted by last change, every
+    // edit moves the note to the top, so it never stays where it is.
+    public boolean keepsPosition(NoteSummary loaded, Note updated) {
+        if (updated.getPriority() < minPriority || updated.getPriority() > maxPriority) {
+            return false;
+        }
+        switch (sort) {
+            case PRIORITY:
+                return updated.getPriority() == loaded.getPriority();
+            case TITLE:
+                // Exactly the same title, a change of case could still move it among notes with a similar title
+                return updated.getTitle() != null && updated.getTitle().equals(loaded.getTitle());
+            case CREATED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // The first page of the list.
+    public SupportSQLiteQuery first(int limit) {
+        return build(null, null, limit);
+    }
+
+    // The page starting at (and including) the given note.
+    public SupportSQLiteQuery from(NoteSummary key, int limit) {
+        return build(key, "=", limit);
+    }
+
+    // The page that comes directly after the given note.
+    public SupportSQLiteQuery after(NoteSummary key, int limit) {
+        return build(key, "", limit);
+    }
+
+    // The page that comes directly before the given note. The order is reversed so that the closest notes
+    // are returned first, the caller flips them back.
+    public SupportSQLiteQuery before(NoteSummary key, int limit) {
+        return build(key, null, limit);
+    }
+
+    // Builds the query for the IDs of every note in the list, in no particular order (see NoteDao.getIds).
+    public SupportSQLiteQuery ids() {
+        StringBuilder sql = new StringBuilder("SELECT id FROM note_table WHERE deletedAt = 0");
+        List<Object> args = new ArrayList<>();
+        appendPriorityFilter(sql, args);
+        return new SimpleSQLiteQuery(sql.toString(), args.toArray());
+    }
+
+    // Builds the query. With a key, "after" is "" for the notes after it, "=" for the notes after it and the
+    // note itself, or null for the notes before it.
+    private SupportSQLiteQuery build(NoteSummary key, String after, int limit) {
+        String column = sort.getColumn();
+        // Whether the page goes the same way as the list, smallest first
+        boolean forward = key == null || after != null;
+        boolean ascending = sort.isAscending() == forward;
+        String direction = ascending ? "ASC" : "DESC";
+
+        StringBuilder sql = new StringBuilder("SELECT ").append(NoteDao.SUMMARY_COLUMNS)
+                .append(" FROM note_table WHERE deletedAt = 0");
+        List<Object> args = new ArrayList<>();
+        appendPriorityFilter(sql, args);
+        if (key != null) {
+            // For a descending page: column <= key AND (column < key OR id < keyId), flipped for ascending
+            String inclusive = ascending ? ">=" : "<=";
+            String exclusive = ascending ? ">" : "<";
+            Object keyValue = sort.keyOf(key);
+            sql.append(" AND ").append(column).append(' ').append(inclusive).append(" ?")
+                    .append(" AND (").append(column).append(' ').append(exclusive).append(" ?")
+                    .append(" OR id ").append(exclusive).append("=".equals(after) ? "=" : "").append(" ?)");
+            args.add(keyValue);
+            args.add(keyValue);
+            args.add(key.getId());
+        }
+        sql.append(" ORDER BY ").append(column).append(' ').append(direction)
+                .append(", id ").append(direction)
+                .append(" LIMIT ?");
+        args.add(limit);
+        return new SimpleSQLiteQuery(sql.toString(), args.toArray());
+    }
+
+    // The full range needs no filter, and leaving it out keeps the query a plain index walk
+    private void appendPriorityFilter(StringBuilder sql, List<Object> args) {
+        if (minPriority > MIN_PRIORITY || maxPriority < MAX_PRIORITY) {
+            sql.append(" AND priority BETWEEN ? AND ?");
+            args.add(minPriority);
+            args.add(maxPriority);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof NoteListQuery)) {
+            return false;
+        }
+        NoteListQuery other = (NoteListQuery) o;
+        return sort == other.sort && minPriority == other.minPriority && maxPriority == other.maxPriority;
+    }
+
+    @Override
+    public int hashCode() {
+        return (sort.hashCode() * 31 + minPriority) * 31 + maxPriority;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.architecturecomponents;
+
+// A single full text search hit, returned by NoteDao.searchMatches. Only the ID and the FTS matchinfo
+// blob are read, so that every hit can be ranked without loading the note text.
+public class NoteMatch {
+    // ID of the matching note
+    public int id;
+
+    // Result of matchinfo(note_fts, 'pcx'), read by NoteSearchRanker
+    public byte[] matchInfo;
+}
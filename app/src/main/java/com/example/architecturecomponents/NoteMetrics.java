@@ -0,0 +1,289 @@
+package com.example.architecturecomponents;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// In memory registry of how long database operations take. Each operation (such as "NoteDao.getNotes")
+// has a latency histogram along with counts of calls, rows and errors. Everything is kept in atomics, so
+// recording never takes a lock and can be done from any thread. Has no Android dependencies, the report is
+// built as plain text or JSON.
+public class NoteMetrics {
+    // Histogram buckets: bucket 0 is under 1 microsecond, bucket i holds times from 2^(i-1) up to 2^i
+    // microseconds, and the last bucket holds everything from about 8 seconds up.
+    static final int BUCKETS = 25;
+
+    // The metrics shared by the whole app
+    private static final NoteMetrics instance = new NoteMetrics();
+
+    // Operations by name, added the first time each one is recorded
+    private final ConcurrentMap<String, Operation> operations = new ConcurrentHashMap<>();
+
+    // Returns the metrics shared by the whole app.
+    public static NoteMetrics getInstance() {
+        return instance;
+    }
+
+    // Records one successful run of an operation, how long it took and how many rows it read or wrote.
+    public void record(String name, long nanos, int rows) {
+        Operation operation = operation(name);
+        operation.record(nanos);
+        operation.rows.addAndGet(rows);
+    }
+
+    // Records one failed run of an operation and how long it took to fail.
+    public void recordError(String name, long nanos) {
+        Operation operation = operation(name);
+        operation.record(nanos);
+        operation.errors.incrementAndGet();
+    }
+
+    // Returns a snapshot of one operation, or null if it has never been recorded.
+    public Snapshot getSnapshot(String name) {
+        Operation operation = operations.get(name);
+        return operation == null ? null : operation.snapshot(name);
+    }
+
+    // Returns a snapshot of every operation, sorted by name.
+    public List<Snapshot> getSnapshots() {
+        List<String> names = new ArrayList<>(operations.keySet());
+        Collections.sort(names);
+        List<Snapshot> snapshots = new ArrayList<>(names.size());
+        for (String name : names) {
+            snapshots.add(operations.get(name).snapshot(name));
+        }
+        return snapshots;
+    }
+
+    // Forgets everything recorded so far.
+    public void reset() {
+        operations.clear();
+    }
+
+    // Returns one line per operation, slowest (by 99th percentile) first, for logcat or a debug screen.
+    public String toText() {
+        List<Snapshot> snapshots = getSnapshots();
+        Collections.sort(snapshots, new Comparator<Snapshot>() {
+            @Override
+            public int compare(Snapshot a, Snapshot b) {
+                return Long.compare(b.getPercentileNanos(99), a.getPercentileNanos(99));
+            }
+        });
+        StringBuilder text = new StringBuilder();
+        for (Snapshot snapshot : snapshots) {
+            text.append(snapshot).append('\n');
+        }
+        return text.toString();
+    }
+
+    // Returns every operation as a JSON array, for saving to a file and comparing between runs.
+    public String toJson() {
+        StringBuilder json = new StringBuilder("[");
+        List<Snapshot> snapshots = getSnapshots();
+        for (int i = 0; i < snapshots.size(); i++) {
+            Snapshot s = snapshots.get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("  {\"name\": \"").append(s.name.replace("\\", "\\\\").replace("\"", "\\\""))
+                    .append("\", \"count\": ").append(s.count)
+                    .append(", \"errors\": ").append(s.errors)
+                    .append(", \"rows\": ").append(s.rows)
+                    .append(", \"totalNanos\": ").append(s.totalNanos)
+                    .append(", \"maxNanos\": ").append(s.maxNanos)
+                    .append(", \"p50Nanos\": ").append(s.getPercentileNanos(50))
+                    .append(", \"p90Nanos\": ").append(s.getPercentileNanos(90))
+                    .append(", \"p99Nanos\": ").append(s.getPercentileNanos(99))
+                    .append(", \"buckets\": [");
+            for (int b = 0; b < BUCKETS; b++) {
+                json.append(b == 0 ? "" : ", ").append(s.buckets[b]);
+            }
+            json.append("]}");
+        }
+        return json.append(snapshots.isEmpty() ? "]" : "\n]").toString();
+    }
+
+    // Wraps an interface (the DAO) so that every call to it is timed and recorded under
+    // "<prefix>.<method name>". Methods returning LiveData are passed straight through untimed, as their
+    // query only runs later on another thread.
+    @SuppressWarnings("unchecked")
+    public <T> T instrument(Class<T> type, final T target, final String prefix) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getDeclaringClass() == Object.class || isDeferred(method.getReturnType())) {
+                    return invokeTarget(target, method, args);
+                }
+                String name = prefix + "." + method.getName();
+                long start = System.nanoTime();
+                Object result;
+                try {
+                    result = invokeTarget(target, method, args);
+                } catch (Throwable e) {
+                    recordError(name, System.nanoTime() - start);
+                    throw e;
+                }
+                record(name, System.nanoTime() - start, rowsOf(result, args));
+                return result;
+            }
+        });
+    }
+
+    // Calls the real method, unwrapping the exception it throws so callers see the original one
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    // True for return types whose work happens after the method returns (LiveData, data source factories)
+    private static boolean isDeferred(Class<?> returnType) {
+        String name = returnType.getName();
+        return name.startsWith("androidx.lifecycle.") || name.startsWith("androidx.paging.");
+    }
+
+    // Works out the rows an operation touched: the size of a returned list, the count returned by an
+    // update or delete, or for methods returning nothing the size of the list passed in.
+    private static int rowsOf(Object result, Object[] args) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        } else if (result instanceof Integer) {
+            return (Integer) result;
+        } else if (result instanceof long[]) {
+            return ((long[]) result).length;
+        } else if (result != null) {
+            return 1;
+        } else if (args != null && args.length > 0 && args[0] instanceof Collection) {
+            return ((Collection<?>) args[0]).size();
+        } else if (args != null && args.length > 0 && args[0] instanceof Note) {
+            return 1;
+        }
+        return 0;
+    }
+
+    // Returns the operation with the name, adding it if it's new
+    private Operation operation(String name) {
+        Operation operation = operations.get(name);
+        if (operation == null) {
+            Operation added = new Operation();
+            operation = operations.putIfAbsent(name, added);
+            if (operation == null) {
+                operation = added;
+            }
+        }
+        return operation;
+    }
+
+    // Returns the histogram bucket for a time
+    static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    // Returns the upper bound of a histogram bucket in nanoseconds
+    static long bucketLimitNanos(int bucket) {
+        return (1L << bucket) * 1000;
+    }
+
+    // The live counters of one operation
+    private static class Operation {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        private void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            buckets.incrementAndGet(bucketOf(nanos));
+            long max;
+            while (nanos > (max = maxNanos.get())) {
+                if (maxNanos.compareAndSet(max, nanos)) {
+                    break;
+                }
+            }
+        }
+
+        // The counters are read one at a time, so a snapshot taken while calls are being recorded may be
+        // off by the calls in flight. Fine for a report.
+        private Snapshot snapshot(String name) {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+            }
+            return new Snapshot(name, count.get(), errors.get(), rows.get(), totalNanos.get(), maxNanos.get(), counts);
+        }
+    }
+
+    // Snapshot of the metrics of one operation.
+    public static class Snapshot {
+        public final String name;
+        // Calls recorded, and how many of them failed
+        public final long count;
+        public final long errors;
+        // Rows read or written by the calls
+        public final long rows;
+        // Time taken by all of the calls, and by the slowest one
+        public final long totalNanos;
+        public final long maxNanos;
+        // Calls per histogram bucket
+        private final long[] buckets;
+
+        private Snapshot(String name, long count, long errors, long rows, long totalNanos, long maxNanos, long[] buckets) {
+            this.name = name;
+            this.count = count;
+            this.errors = errors;
+            this.rows = rows;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.buckets = buckets;
+        }
+
+        // Average time per call
+        public long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        // Time that the given percent of calls finished within. Only as precise as the histogram, so this is
+        // the upper bound of the bucket the percentile falls in (never more than the slowest call).
+        public long getPercentileNanos(int percent) {
+            long total = 0;
+            for (long bucketCount : buckets) {
+                total += bucketCount;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long wanted = (total * percent + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= wanted) {
+                    return Math.min(bucketLimitNanos(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s count=%d errors=%d rows=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms",
+                    name, count, errors, rows, getMeanNanos() / 1e6, getPercentileNanos(50) / 1e6,
+                    getPercentileNanos(99) / 1e6, maxNanos / 1e6);
+        }
+    }
+}
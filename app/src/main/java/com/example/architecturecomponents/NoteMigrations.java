@@ -0,0 +1,269 @@
+package com.example.architecturecomponents;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+// Holds the migrations between each version of the note database. Every schema change bumps the
+// version in NoteDatabase and adds a migration here, so existing notes are kept rather than the
+// database being wiped. The exported schema for every version lives in app/schemas and is used by
+// MigrationTest to check each migration.
+public class NoteMigrations {
+
+    // Version 1 to 2, adds the index used by the paged list queries.
+    public static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_note_table_priority_id` ON `note_table` (`priority`, `id`)");
+        }
+    };
+
+    // Version 2 to 3, adds the full text search table for the notes. The triggers are the ones Room
+    // creates for an external content FTS table, they keep note_fts in sync with note_table. The
+    // 'rebuild' command then indexes the notes that already exist.
+    public static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `note_fts` USING FTS4(`title` TEXT, `description` TEXT, content=`note_table`)");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_note_fts_BEFORE_UPDATE BEFORE UPDATE ON `note_table` BEGIN DELETE FROM `note_fts` WHERE `docid`=OLD.`rowid`; END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_note_fts_BEFORE_DELETE BEFORE DELETE ON `note_table` BEGIN DELETE FROM `note_fts` WHERE `docid`=OLD.`rowid`; END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_note_fts_AFTER_UPDATE AFTER UPDATE ON `note_table` BEGIN INSERT INTO `note_fts`(`docid`, `title`, `description`) VALUES (NEW.`rowid`, NEW.`title`, NEW.`description`); END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_note_fts_AFTER_INSERT AFTER INSERT ON `note_table` BEGIN INSERT INTO `note_fts`(`docid`, `title`, `description`) VALUES (NEW.`rowid`, NEW.`title`, NEW.`description`); END");
+            database.execSQL("INSERT INTO `note_fts`(`note_fts`) VALUES ('rebuild')");
+        }
+    };
+
+    // Version 3 to 4, adds the updatedAt column. Existing notes start at 0 and get a real value on
+    // their next write.
+    public static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `note_table` ADD COLUMN `updatedAt` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    // Version 4 to 5, adds the deletedAt column used for soft deletes, and swaps the list index for one
+    // that starts with deletedAt so the list queries can skip deleted notes within the index.
+    public static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `note_table` ADD COLUMN `deletedAt` INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("DROP INDEX IF EXISTS `index_note_table_priority_id`");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_note_table_deletedAt_priority_id` ON `note_table` (`deletedAt`, `priority`, `id`)");
+        }
+    };
+
+    // Version 5 to 6, adds the createdAt column, makes the title sort ignore case and adds an index per
+    // sort order. SQLite can't change the collation of a column, so the table is rebuilt: the notes are
+    // copied to a new table (existing notes take their last write as when they were created), the
+    // AUTOINCREMENT counter is carried over so IDs aren't reused, and the indexes and the note_fts
+    // triggers that went with the old table are created again. The IDs don't change, so note_fts is
+    // still in step and doesn't need rebuilding.
+    public static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `note_table_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `title` TEXT COLLATE NOCASE, `description` TEXT, `priority` INTEGER NOT NULL, `updatedAt` INTEGER NOT NULL, `deletedAt` INTEGER NOT NULL, `createdAt` INTEGER NOT NULL)");
+            database.execSQL("INSERT INTO `note_table_new` (`id`, `title`, `description`, `priority`, `updatedAt`, `deletedAt`, `createdAt`) "
+                    + "SELECT `id`, IFNULL(`title`, ''), `description`, `priority`, `updatedAt`, `deletedAt`, `updatedAt` FROM `note_table`");
+            database.execSQL("DELETE FROM sqlite_sequence WHERE name = 'note_table_new'");
+            database.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT 'note_table_new', seq FROM sqlite_sequence WHERE name = 'note_table'");
+            database.execSQL("DROP TABLE `note_table`");
+            database.execSQL("ALTER TABLE `note_table_new` RENAME TO `note_table`");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_note_table_deletedAt_priority_id` ON `note_table` (`deletedAt`, `priority`, `id`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_note_table_deletedAt_title_id` ON `note_table` (`deletedAt`, `title`, `id`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_note_table_deletedAt_createdAt_id` ON `note_table` (`deletedAt`, `createdAt`, `id`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_note_table_deletedAt_updatedAt_id` ON `note_table` (`deletedAt`, `updatedAt`, `id`)");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_note_fts_BEFORE_UPDATE BEFORE UPDATE ON `note_table` BEGIN DELETE FROM `note_fts` WHERE `docid`=OLD.`rowid`; END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_note_fts_BEFORE_DELETE BEFORE DELETE ON `note_table` BEGIN DELETE FROM `note_fts` WHERE `docid`=OLD.`rowid`; END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_note_fts_AFTER_UPDATE AFTER UPDATE ON `note_table` BEGIN INSERT INTO `note_fts`(`docid`, `title`, `description`) VALUES (NEW.`rowid`, NEW.`title`, NEW.`description`); END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_note_fts_AFTER_INSERT AFTER INSERT ON `note_table` BEGIN INSERT INTO `note_fts`(`docid`, `title`, `description`) VALUES (NEW.`rowid`, NEW.`title`, NEW.`description`); END");
+        }
+    };
+
+    // Version 6 to 7, adds note_body for long descriptions and the bodyLength column pointing to it. The
+    // long descriptions already in note_table are moved over one note at a time: compressed into note_body,
+    // and cut down to their start in note_table (the update triggers reindex the cut down text).
+    public static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `note_table` ADD COLUMN `bodyLength` INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `note_body` (`noteId` INTEGER NOT NULL, `data` BLOB NOT NULL, PRIMARY KEY(`noteId`), FOREIGN KEY(`noteId`) REFERENCES `note_table`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+
+            // Only the IDs are read up front, so the table isn't changed under an open cursor
+            List<Integer> ids = new ArrayList<>();
+            try (Cursor cursor = database.query("SELECT id FROM note_table WHERE length(description) > "
+                    + NoteBodies.LARGE_LENGTH)) {
+                while (cursor.moveToNext()) {
+                    ids.add(cursor.getInt(0));
+                }
+            }
+            for (int id : ids) {
+                String description = null;
+                try (Cursor cursor = database.query("SELECT description FROM note_table WHERE id = ?", new Object[]{id})) {
+                    if (cursor.moveToFirst()) {
+                        description = cursor.getString(0);
+                    }
+                }
+                if (!NoteBodies.isLarge(description)) {
+                    continue;
+                }
+                ContentValues body = new ContentValues();
+                body.put("noteId", id);
+                body.put("data", NoteBodies.compress(description));
+                database.insert("note_body", SQLiteDatabase.CONFLICT_REPLACE, body);
+                database.execSQL("UPDATE note_table SET description = ?, bodyLength = ? WHERE id = ?",
+                        new Object[]{NoteBodies.inlinePart(description), NoteBodies.bodyLength(description), id});
+            }
+        }
+    };
+
+    // Version 7 to 8, adds priority_count with the number of notes at each priority, filled in from the
+    // notes already there and kept up to date by triggers from then on.
+    public static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `priority_count` (`priority` INTEGER NOT NULL, `notes` INTEGER NOT NULL, PRIMARY KEY(`priority`))");
+            createPriorityCounts(database);
+        }
+    };
+
+    // Version 8 to 9, adds what NoteSync needs: a guid and a server version for every note, and
+    // note_changelog of the notes to push. Existing notes get a random guid and are all logged, so the first
+    // sync pushes them. Deleted notes waiting to be purged are logged too, the server may have them.
+    public static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `note_table` ADD COLUMN `guid` TEXT");
+            database.execSQL("ALTER TABLE `note_table` ADD COLUMN `version` INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("UPDATE `note_table` SET `guid` = lower(hex(randomblob(16)))");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_note_table_guid` ON `note_table` (`guid`)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `note_changelog` (`seq` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `guid` TEXT NOT NULL)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_note_changelog_guid` ON `note_changelog` (`guid`)");
+            logExistingNotes(database);
+        }
+    };
+
+    // Version 9 to 10, swaps Room's note_fts update triggers, which fire on any UPDATE of note_table and
+    // so reindexed a note even when only the priority, updatedAt, deletedAt or version was written, for ones
+    // that only fire when the title or description is written. The index itself doesn't change.
+    public static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("DROP TRIGGER IF EXISTS room_fts_content_sync_note_fts_BEFORE_UPDATE");
+            database.execSQL("DROP TRIGGER IF EXISTS room_fts_content_sync_note_fts_AFTER_UPDATE");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS note_fts_BEFORE_UPDATE BEFORE UPDATE OF `title`, `description` "
+                    + "ON `note_table` BEGIN DELETE FROM `note_fts` WHERE `docid`=OLD.`rowid`; END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS note_fts_AFTER_UPDATE AFTER UPDATE OF `title`, `description` "
+                    + "ON `note_table` BEGIN INSERT INTO `note_fts`(`docid`, `title`, `description`) "
+                    + "VALUES (NEW.`rowid`, NEW.`title`, NEW.`description`); END");
+        }
+    };
+
+    // Version 10 to 11, makes note_fts hold its own copy of the text, so long descriptions can be indexed
+    // whole rather than only the start of them kept in note_table, see NoteFts. The external content table
+    // and its triggers are dropped, the new table is filled from note_table, then the full text of each long
+    // description is read from note_body one note at a time and indexed in place of its start.
+    public static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("DROP TRIGGER IF EXISTS room_fts_content_sync_note_fts_BEFORE_DELETE");
+            database.execSQL("DROP TRIGGER IF EXISTS room_fts_content_sync_note_fts_AFTER_INSERT");
+            database.execSQL("DROP TRIGGER IF EXISTS note_fts_BEFORE_UPDATE");
+            database.execSQL("DROP TRIGGER IF EXISTS note_fts_AFTER_UPDATE");
+            database.execSQL("DROP TABLE IF EXISTS `note_fts`");
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `note_fts` USING FTS4(`title` TEXT, `description` TEXT)");
+            database.execSQL("INSERT INTO `note_fts` (`docid`, `title`, `description`) "
+                    + "SELECT `id`, `title`, `description` FROM `note_table`");
+
+            List<Integer> ids = new ArrayList<>();
+            try (Cursor cursor = database.query("SELECT noteId FROM note_body")) {
+                while (cursor.moveToNext()) {
+                    ids.add(cursor.getInt(0));
+                }
+            }
+            for (int id : ids) {
+                try (Cursor cursor = database.query("SELECT data FROM note_body WHERE noteId = ?", new Object[]{id})) {
+                    if (cursor.moveToFirst()) {
+                        database.execSQL("UPDATE note_fts SET description = ? WHERE docid = ?",
+                                new Object[]{NoteBodies.decompress(cursor.getBlob(0)), id});
+                    }
+                }
+            }
+            createFtsTriggers(database);
+        }
+    };
+
+    // Every migration, in order, handed to the database builder.
+    public static final Migration[] ALL = {
+            MIGRATION_1_2,
+            MIGRATION_2_3,
+            MIGRATION_3_4,
+            MIGRATION_4_5,
+            MIGRATION_5_6,
+            MIGRATION_6_7,
+            MIGRATION_7_8,
+            MIGRATION_8_9,
+            MIGRATION_9_10,
+            MIGRATION_10_11
+    };
+
+    // Creates the triggers that keep priority_count in step with note_table, and counts the notes already
+    // there. Room can't declare triggers, so this runs from MIGRATION_7_8 and when a new database is
+    // created. Each trigger changes one or two rows of priority_count, so a write costs the same however
+    // many notes there are. Deleted notes aren't counted: marking a note deleted (or bringing it back)
+    // moves it out of (or into) the count, and purging a deleted note changes nothing. A priority's row is
+    // only created when a note first gets it, with INSERT OR IGNORE as older SQLite has no upsert.
+    public static void createPriorityCounts(SupportSQLiteDatabase database) {
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS priority_count_AFTER_INSERT AFTER INSERT ON `note_table` "
+                + "WHEN NEW.`deletedAt` = 0 BEGIN "
+                + "INSERT OR IGNORE INTO `priority_count` (`priority`, `notes`) VALUES (NEW.`priority`, 0); "
+                + "UPDATE `priority_count` SET `notes` = `notes` + 1 WHERE `priority` = NEW.`priority`; END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS priority_count_AFTER_DELETE AFTER DELETE ON `note_table` "
+                + "WHEN OLD.`deletedAt` = 0 BEGIN "
+                + "UPDATE `priority_count` SET `notes` = `notes` - 1 WHERE `priority` = OLD.`priority`; END");
+        // Only edits that change the priority or whether the note is deleted touch the counts
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS priority_count_AFTER_UPDATE AFTER UPDATE OF `priority`, `deletedAt` "
+                + "ON `note_table` WHEN OLD.`priority` != NEW.`priority` OR (OLD.`deletedAt` = 0) != (NEW.`deletedAt` = 0) BEGIN "
+                + "UPDATE `priority_count` SET `notes` = `notes` - 1 WHERE OLD.`deletedAt` = 0 AND `priority` = OLD.`priority`; "
+                + "INSERT OR IGNORE INTO `priority_count` (`priority`, `notes`) VALUES (NEW.`priority`, 0); "
+                + "UPDATE `priority_count` SET `notes` = `notes` + 1 WHERE NEW.`deletedAt` = 0 AND `priority` = NEW.`priority`; END");
+        database.execSQL("DELETE FROM `priority_count`");
+        database.execSQL("INSERT INTO `priority_count` (`priority`, `notes`) "
+                + "SELECT `priority`, COUNT(*) FROM `note_table` WHERE `deletedAt` = 0 GROUP BY `priority`");
+    }
+
+    // Creates the triggers that index what is written to note_table in note_fts, see NoteFts. Room can't
+    // declare triggers (it only makes its own for an external content table), so this runs from
+    // MIGRATION_10_11 and when a new database is created. An update only reindexes the note when the title or
+    // description is in it, like the priority_count trigger only firing for its columns. The description
+    // indexed is only replaced if what is stored for it changed: a long note's title being edited leaves its
+    // full text in the index, and NoteWriter indexes the full text again whenever it writes a long one.
+    public static void createFtsTriggers(SupportSQLiteDatabase database) {
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS note_fts_AFTER_INSERT AFTER INSERT ON `note_table` BEGIN "
+                + "INSERT INTO `note_fts` (`docid`, `title`, `description`) "
+                + "VALUES (NEW.`rowid`, NEW.`title`, NEW.`description`); END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS note_fts_AFTER_DELETE AFTER DELETE ON `note_table` BEGIN "
+                + "DELETE FROM `note_fts` WHERE `docid` = OLD.`rowid`; END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS note_fts_AFTER_UPDATE AFTER UPDATE OF `title`, `description` "
+                + "ON `note_table` BEGIN UPDATE `note_fts` SET `title` = NEW.`title`, `description` = CASE "
+                + "WHEN NEW.`description` IS OLD.`description` AND NEW.`bodyLength` = OLD.`bodyLength` "
+                + "THEN `description` ELSE NEW.`description` END WHERE `docid` = NEW.`rowid`; END");
+    }
+
+    // Logs every note in note_changelog to be pushed by the next sync, used by MIGRATION_8_9 and for the
+    // seed notes of a new database, which are written here rather than through NoteWriter.
+    public static void logExistingNotes(SupportSQLiteDatabase database) {
+        database.execSQL("INSERT INTO `note_changelog` (`guid`) SELECT `guid` FROM `note_table` ORDER BY `id`");
+    }
+
+    // Not to be created, only holds constants and helpers.
+    private NoteMigrations() {
+    }
+}
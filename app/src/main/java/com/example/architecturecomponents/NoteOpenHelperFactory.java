@@ -0,0 +1,65 @@
+package com.example.architecturecomponents;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+
+// Opens the database the same way Room does by default, but turns on incremental auto vacuum when each
+// connection is configured. That runs before Room creates the tables, which is the only time the mode can be
+// set without a full VACUUM, so a new database starts out in it for free. On a database that already has
+// tables the pragma changes nothing, see NoteDatabase.enableIncrementalVacuum for those.
+class NoteOpenHelperFactory implements SupportSQLiteOpenHelper.Factory {
+    private final SupportSQLiteOpenHelper.Factory delegate = new FrameworkSQLiteOpenHelperFactory();
+
+    @Override
+    public SupportSQLiteOpenHelper create(SupportSQLiteOpenHelper.Configuration configuration) {
+        SupportSQLiteOpenHelper.Configuration wrapped = SupportSQLiteOpenHelper.Configuration
+                .builder(configuration.context)
+                .name(configuration.name)
+                .callback(new Callback(configuration.callback))
+                .build();
+        return delegate.create(wrapped);
+    }
+
+    // Room's callback, which creates, migrates and checks the tables, with the pragma run first
+    private static class Callback extends SupportSQLiteOpenHelper.Callback {
+        private final SupportSQLiteOpenHelper.Callback room;
+
+        Callback(SupportSQLiteOpenHelper.Callback room) {
+            super(room.version);
+            this.room = room;
+        }
+
+        @Override
+        public void onConfigure(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            room.onConfigure(db);
+        }
+
+        @Override
+        public void onCreate(@NonNull SupportSQLiteDatabase db) {
+            room.onCreate(db);
+        }
+
+        @Override
+        public void onUpgrade(@NonNull SupportSQLiteDatabase db, int oldVersion, int newVersion) {
+            room.onUpgrade(db, oldVersion, newVersion);
+        }
+
+        @Override
+        public void onDowngrade(@NonNull SupportSQLiteDatabase db, int oldVersion, int newVersion) {
+            room.onDowngrade(db, oldVersion, newVersion);
+        }
+
+        @Override
+        public void onOpen(@NonNull SupportSQLiteDatabase db) {
+            room.onOpen(db);
+        }
+
+        @Override
+        public void onCorruption(@NonNull SupportSQLiteDatabase db) {
+            room.onCorruption(db);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.architecturecomponents;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+// Number of notes (not counting deleted ones) at each priority. The rows are kept up to date by triggers
+// on note_table (see NoteMigrations.createPriorityCounts), so the totals and the priority histogram are
+// read from at most ten rows however many notes there are, rather than counted from note_table.
+@Entity(tableName = "priority_count")
+public class NotePriorityCount {
+
+    // The priority counted
+    @PrimaryKey
+    private int priority;
+
+    // Number of notes with that priority
+    private int notes;
+
+    //Constructor for the class
+    public NotePriorityCount(int priority, int notes) {
+        this.priority = priority;
+        this.notes = notes;
+    }
+
+    // Get functions to return the values of the table.
+    public int getPriority() {
+        return priority;
+    }
+
+    public int getNotes() {
+        return notes;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.architecturecomponents;
+
+import android.util.Log;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Removes deleted notes for good once they can no longer be undone. Deleting a note only marks it, which is
+// a quick update, so swiping away notes one after another stays cheap. The marked notes are then removed
+// in the background a batch per transaction, through the NoteWriter so other writes are never blocked for
+// long. A purge only runs when there is something old enough to remove.
+public class NotePurger {
+    private static final String TAG = "NotePurger";
+
+    // How long a deleted note is kept (and the delete can be undone) before it is purged, in milliseconds.
+    // Well beyond how long the undo snackbar is shown.
+    public static final long KEEP_DELETED_MS = TimeUnit.MINUTES.toMillis(5);
+    // Most notes removed per transaction
+    public static final int PURGE_BATCH_ROWS = 200;
+    // Delay before the first purge, so it doesn't compete with start up
+    private static final long START_DELAY_MS = TimeUnit.SECONDS.toMillis(10);
+
+    // Declare the DAO used to find deleted notes, the writer that removes them and the purge thread
+    private final NoteDao noteDao;
+    private final NoteWriter writer;
+    private final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1);
+
+    // True while a purge is waiting to run, so deletes in quick succession only schedule one
+    private boolean scheduled;
+
+    // Constructor, takes the DAO and the writer from the repository, then schedules a purge of anything
+    // left over from before the app was last closed.
+    public NotePurger(NoteDao noteDao, NoteWriter writer) {
+        this.noteDao = noteDao;
+        this.writer = writer;
+        schedule(START_DELAY_MS);
+    }
+
+    // Called after a delete, makes sure a purge will run once the note is old enough.
+    public void onDeleted() {
+        schedule(KEEP_DELETED_MS);
+    }
+
+    // Schedules a purge after the delay, unless one is already waiting.
+    private synchronized void schedule(long delayMs) {
+        if (scheduled) {
+            return;
+        }
+        scheduled = true;
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (NotePurger.this) {
+                    scheduled = false;
+                }
+                purge();
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Removes every note deleted before the cutoff a batch at a time, then schedules the next purge for
+    // when the oldest remaining deleted note is old enough.
+    private void purge() {
+        long cutoff = System.currentTimeMillis() - KEEP_DELETED_MS;
+        int total = 0;
+        try {
+            int purged;
+            do {
+                purged = writer.purgeDeleted(cutoff, PURGE_BATCH_ROWS);
+                total += purged;
+            } while (purged == PURGE_BATCH_ROWS);
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Purge interrupted", e);
+            return;
+        }
+        if (total > 0) {
+            Log.i(TAG, "Purged " + total + " deleted notes");
+        }
+
+        Long oldest = noteDao.getOldestDeletedAt();
+        if (oldest != null) {
+            // At least a second away, so a note deleted with a clock that has since gone back doesn't
+            // make this spin
+            schedule(Math.max(oldest + KEEP_DELETED_MS - System.currentTimeMillis(), 1000));
+        }
+    }
+}
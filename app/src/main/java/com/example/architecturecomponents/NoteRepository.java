@@ -1,122 +1,399 @@
 package com.example.architecturecomponents;
 
 import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.os.AsyncTask;
+import android.util.Log;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Observer;
+import androidx.paging.LivePagedListBuilder;
+import androidx.paging.PagedList;
 
 // Class is used as a repository for data sources, provides View Model with clean access to the methods/data.
+// There is only one repository, so that every write in the app goes through the same NoteWriter.
 public class NoteRepository {
-    // Declare the note Dao and the LiveData variables
+    private static final String TAG = "NoteRepository";
+    // Number of notes loaded from the database per page of the list
+    private static final int PAGE_SIZE = 50;
+    // Most writes that can be waiting for the writer, and the most rows it writes per transaction
+    private static final int WRITE_QUEUE_CAPACITY = 1024;
+    private static final int MAX_ROWS_PER_TRANSACTION = 500;
+    // Most notes held in the cache, and the most text they can hold between them (1MB)
+    private static final int CACHE_MAX_NOTES = 500;
+    private static final long CACHE_MAX_TEXT_BYTES = 1024 * 1024;
+    // Notes removed per transaction when deleting them all, and free pages given back per vacuum transaction
+    private static final int DELETE_CHUNK_ROWS = 500;
+    private static final int VACUUM_CHUNK_PAGES = 1024;
+    // Name of the preferences file the sync cursor is kept in
+    private static final String SYNC_STATE = "note_sync";
+
+    // Told how far a long running job (such as deleting every note) has got
+    public interface ProgressListener {
+        void onProgress(int done, int total);
+    }
+
+    // Variable for creating a singleton of this class
+    private static NoteRepository instance;
+
+    // Declare the database, the note Dao, the writer, the note cache, the row text layout and the LiveData variables
+    private NoteDatabase database;
     private NoteDao noteDao;
-    private LiveData<List<Note>> allNotes;
+    private NoteWriter writer;
+    private NotePurger purger;
+    private NoteCache cache;
+    private NoteTextLayout textLayout = new NoteTextLayout();
+    private SharedPreferences syncState;
+    // The paged list for each sort order and filter picked so far. Each is built the first time it is shown
+    // and then kept, like the first list, so going back to one doesn't build another list with its own data
+    // source following the writer. There are only a few sort orders and priority ranges. Main thread only.
+    private final Map<NoteListQuery, NoteList> lists = new HashMap<>();
+    // The list on show, null while search results are
+    private NoteList shownList;
+    // Loaded notes of the list on show that were edited in place rather than reloaded, set on the main thread
+    private final MediatorLiveData<List<NoteSummary>> patchedNotes = new MediatorLiveData<>();
+
+    // A paged note list, and the factory of its data sources which says which of its notes were edited
+    private static class NoteList {
+        final NoteDataSourceFactory factory;
+        final LiveData<PagedList<NoteSummary>> pages;
+
+        NoteList(NoteDataSourceFactory factory, LiveData<PagedList<NoteSummary>> pages) {
+            this.factory = factory;
+            this.pages = pages;
+        }
+    }
+
+    // Synchronized so that only one repository is ever created, returns the current instance.
+    public static synchronized NoteRepository getInstance(Application application) {
+        if (instance == null) {
+            instance = new NoteRepository(application);
+        }
+        return instance;
+    }
 
     //Constructor for this repository class, takes the application context in order to get the database instance.
-    public NoteRepository(Application application) {
+    private NoteRepository(Application application) {
         // Gets the database instance, taking the application context.
-        NoteDatabase database = NoteDatabase.getInstance(application);
+        database = NoteDatabase.getInstance(application);
         // Gets the Data Access Object, is able to call function because Room creates the code for this function.
-        noteDao = database.noteDao();
-        // Gets the notes that are stored within the database via the DAO
-        allNotes = noteDao.getAllNotes();
+        noteDao = database.timedNoteDao();
+        // Creates the single writer that every insert, update and delete goes through
+        writer = new NoteWriter(database, WRITE_QUEUE_CAPACITY, MAX_ROWS_PER_TRANSACTION);
+        // Removes deleted notes for good once their undo time is up
+        purger = new NotePurger(noteDao, writer);
+        syncState = application.getSharedPreferences(SYNC_STATE, Context.MODE_PRIVATE);
+        // Cache of full notes by ID. Every write goes through the writer, which says which notes each
+        // committed transaction changed, so only those are updated or dropped and the rest stay cached.
+        cache = new NoteCache(CACHE_MAX_NOTES, CACHE_MAX_TEXT_BYTES);
+        writer.addChangeListener(new NoteWriter.ChangeListener() {
+            @Override
+            public void onChanges(List<NoteChange> changes) {
+                updateCache(changes);
+            }
+        });
+        // The list as it first opens is built up front, the other sort and filter modes when picked.
+        lists.put(NoteListQuery.DEFAULT, buildNotes(NoteListQuery.DEFAULT));
     }
 
-    // Calls the Async task and executes it, passing in the noteDao and taking in the note.
+    // Queues the note to be inserted by the writer.
     public void insert(Note note) {
-        new InsertNoteAsyncTask(noteDao).execute(note);
+        writer.insert(note);
     }
 
-    // Calls the Async task and executes it, passing in the noteDao and taking in the note.
+    // Queues the note to be updated by the writer. The cache gets the new version straight away, so
+    // opening the note again shows the change even before it is committed.
     public void update(Note note) {
-        new UpdateNoteAsyncTask(noteDao).execute(note);
+        cache.update(note);
+        writer.update(note);
     }
 
-    // Calls the Async task and executes it, passing in the noteDao and taking in the note.
-    public void delete(Note note) {
-        new DeleteNoteAsyncTask(noteDao).execute(note);
+    // Queues an update of only the given fields of the note (NoteWriter.FIELD_ flags), used by the editor's
+    // autosave. The note holds every field as it is now, which is what the cache gets.
+    public void updateFields(Note note, int fields) {
+        cache.update(note);
+        writer.updateFields(note, fields);
     }
 
-    // Calls the Async task and executes it, passing in the noteDao and taking in the note.
-    public void deleteAllNotes(){
-        new DeleteAllNotesAsyncTask(noteDao).execute();
+    // Inserts the note and returns the ID it was given, 0 if the insert failed. Waits for the insert to be
+    // committed, so must not be called on the main thread.
+    public int insertAndGetId(Note note) throws InterruptedException {
+        return writer.insertAndGetId(note);
     }
 
-    // Returns the LiveData of the notes, executes on the background thread.
-    public LiveData<List<Note>> getAllNotes() {
-        return allNotes;
+    // Queues the notes with the given IDs to be marked as deleted by the writer. They can be brought back
+    // with restore until the purger removes them.
+    public void delete(List<Integer> ids) {
+        for (int id : ids) {
+            cache.remove(id);
+        }
+        writer.delete(ids);
+        purger.onDeleted();
     }
 
-    // Async task used to insert a note
-    private static class InsertNoteAsyncTask extends AsyncTask<Note, Void, Void> {
-        // Declare an instance of the NoteDao
-        private NoteDao noteDao;
+    // Queues deleted notes with the given IDs to be brought back by the writer.
+    public void restore(List<Integer> ids) {
+        writer.restore(ids);
+    }
 
-        // Construct method, passing in the noteDao
-        private InsertNoteAsyncTask(NoteDao noteDao) {
-            this.noteDao = noteDao;
+    // Queues the notes with the given IDs to be given the priority by the writer, in one transaction.
+    public void setPriority(List<Integer> ids, int priority) {
+        for (int id : ids) {
+            cache.remove(id);
         }
+        writer.setPriority(ids, priority);
+    }
+
+    // Returns the IDs of every note in the list for the query, loaded on a background thread.
+    public LiveData<List<Integer>> getNoteIds(final NoteListQuery query) {
+        final MutableLiveData<List<Integer>> ids = new MutableLiveData<>();
+        database.getQueryExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                ids.postValue(noteDao.getIds(query.ids()));
+            }
+        });
+        return ids;
+    }
+
+    // Waits until every write queued so far has been committed. Must not be called on the main thread.
+    public void flush() throws InterruptedException {
+        writer.flush();
+    }
 
-        // Perform task in background
-        @Override
-        protected Void doInBackground(Note... notes) {
-            noteDao.insert(notes[0]);
-            return null;
+    // Deletes every note a chunk at a time through the writer, then gives the freed space back to the file
+    // system with incremental vacuums (or one full VACUUM, see NoteDatabase.enableIncrementalVacuum). Other
+    // writes and reads get in between chunks, so clearing a large table doesn't hold up the rest of the app.
+    // Returns the number of notes deleted. Slow, must not be called on the main thread.
+    public int deleteAllNotes(ProgressListener listener) throws InterruptedException {
+        cache.clear();
+        int total = noteDao.countNotes();
+        int deleted = 0;
+        int chunk;
+        do {
+            chunk = writer.deleteChunk(DELETE_CHUNK_ROWS);
+            deleted += chunk;
+            listener.onProgress(deleted, Math.max(total, deleted));
+        } while (chunk == DELETE_CHUNK_ROWS);
+
+        // An older database without incremental auto vacuum is switched to it now that it is nearly empty,
+        // which frees all the pages in one go. Otherwise the vacuums stop once there are no free pages left,
+        // or if one frees nothing.
+        if (database.enableIncrementalVacuum()) {
+            return deleted;
+        }
+        int freePages = Integer.MAX_VALUE;
+        int left;
+        while ((left = writer.vacuum(VACUUM_CHUNK_PAGES)) > 0 && left < freePages) {
+            freePages = left;
         }
+        return deleted;
     }
 
-    // Async task used to update a note
-    private static class UpdateNoteAsyncTask extends AsyncTask<Note, Void, Void> {
-        // Declare an instance of the NoteDao
-        private NoteDao noteDao;
+    // Creates an import/export of notes, imports go through the writer in chunked transactions.
+    public NoteTransfer newTransfer() {
+        return new NoteTransfer(noteDao, writer);
+    }
+
+    // Creates a sync with the server at the URL. The changes it pulls are saved through the writer, and the
+    // cursor of what has been pulled is kept across syncs, so only one server should be synced with.
+    public NoteSync newSync(URL serverUrl) {
+        return new NoteSync(noteDao, writer, new NoteSyncClient(serverUrl), syncState);
+    }
 
-        // Construct method, passing in the noteDao
-        private UpdateNoteAsyncTask(NoteDao noteDao) {
-            this.noteDao = noteDao;
+    // Returns what measures the text of the list rows as pages load, the list adapter gives it the paint
+    // settings of its text views.
+    public NoteTextLayout getTextLayout() {
+        return textLayout;
+    }
+
+    // Returns the queue depth and batch size metrics of the writer.
+    public NoteWriter.Stats getWriterStats() {
+        return writer.getStats();
+    }
+
+    // Returns the hit, miss and eviction counts of the note cache.
+    public NoteCache.Stats getCacheStats() {
+        return cache.getStats();
+    }
+
+    // Returns the DAO timings from NoteMetrics followed by the writer and cache metrics, as text for logcat or a
+    // debug screen.
+    public String getMetricsReport() {
+        return NoteMetrics.getInstance().toText() + "NoteWriter " + writer.getStats() + "\nNoteCache " + cache.getStats();
+    }
+
+    // Saves the DAO timings as JSON to the file, on a background thread. Any failure is only logged, the
+    // report is just for debugging.
+    public void saveMetrics(final File file) {
+        final String json = NoteMetrics.getInstance().toJson();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try (Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+                    out.write(json);
+                    Log.i(TAG, "Metrics saved to " + file);
+                } catch (IOException e) {
+                    Log.w(TAG, "Couldn't save metrics to " + file, e);
+                }
+            }
+        });
+    }
+
+    // Brings the cache up to date with a committed transaction, called on the writer thread. Updated notes are
+    // changed in place, notes deleted, brought back or given a new priority are dropped, and anything else
+    // (deleting every note, or a change this doesn't know) empties the cache. New notes and purged ones
+    // (which were dropped when they were deleted) were never in it.
+    private void updateCache(List<NoteChange> changes) {
+        for (NoteChange change : changes) {
+            switch (change.type) {
+                case NoteChange.INSERTED:
+                case NoteChange.PURGED:
+                    break;
+                case NoteChange.UPDATED:
+                    for (Note note : change.notes) {
+                        cache.update(note);
+                    }
+                    break;
+                case NoteChange.DELETED:
+                case NoteChange.RESTORED:
+                case NoteChange.PRIORITY_SET:
+                case NoteChange.VERSIONED:
+                    for (int id : change.ids) {
+                        cache.remove(id);
+                    }
+                    break;
+                default:
+                    cache.clear();
+                    break;
+            }
         }
+    }
 
-        // Perform task in background
-        @Override
-        protected Void doInBackground(Note... notes) {
-            noteDao.update(notes[0]);
-            return null;
+    // Returns the full note with the given ID, from the cache if it is there, otherwise loaded on a
+    // background thread (and then cached). The LiveData gets null if there is no such note.
+    public LiveData<Note> getNote(final int id) {
+        final MutableLiveData<Note> note = new MutableLiveData<>();
+        Note cached = cache.get(id);
+        if (cached != null) {
+            note.postValue(cached);
+            return note;
         }
+        database.getQueryExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                long generation = cache.getGeneration();
+                Note loaded = noteDao.getNoteById(id);
+                if (loaded != null) {
+                    // A long description is only read from note_body now, when the note is opened
+                    NoteBodies.loadInto(noteDao, Collections.singletonList(loaded));
+                    cache.putIfUnchanged(loaded, generation);
+                }
+                note.postValue(loaded);
+            }
+        });
+        return note;
     }
 
-    // Async task used to delete a note
-    private static class DeleteNoteAsyncTask extends android.os.AsyncTask<Note, Void, Void> {
-        // Declare an instance of the NoteDao
-        private NoteDao noteDao;
+    // Returns the LiveData of the number of notes at each priority, lowest first, leaving out priorities with
+    // no notes. Read from the counts the database keeps up to date, so it costs the same however many
+    // notes there are.
+    public LiveData<List<NotePriorityCount>> getPriorityCounts() {
+        return noteDao.getPriorityCounts();
+    }
+
+    // Returns the LiveData of the number of notes (not counting deleted ones), from the same counts.
+    public LiveData<Integer> getNoteCount() {
+        return noteDao.getNoteCount();
+    }
 
-        // Construct method, passing in the noteDao
-        private DeleteNoteAsyncTask(NoteDao noteDao) {
-            this.noteDao = noteDao;
+    // Returns the LiveData of the list notes that were edited where they are rather than reloaded. The list
+    // pages hold these same summaries, already changed, so the list only has to rebind their rows. Only the
+    // edits to the list last handed out by getNotes come through, not those to lists no longer on show.
+    public LiveData<List<NoteSummary>> getPatchedNotes() {
+        return patchedNotes;
+    }
+
+    // Returns the LiveData of the paged note summaries sorted and filtered by the query, pages are loaded on
+    // a background thread. Must be called on the main thread.
+    public LiveData<PagedList<NoteSummary>> getNotes(NoteListQuery query) {
+        NoteList list = lists.get(query);
+        if (list == null) {
+            list = buildNotes(query);
+            lists.put(query, list);
         }
+        show(list);
+        return list.pages;
+    }
 
-        // Perform task in background
-        @Override
-        protected Void doInBackground(Note... notes) {
-            noteDao.delete(notes[0]);
-            return null;
+    // Returns the LiveData of the paged, ranked notes matching the search text. An empty search (or one
+    // with nothing searchable in it) returns the notes for the list query instead. Search results are
+    // always ranked by how well they match, the list's sort and filter don't apply to them. Must be called
+    // on the main thread.
+    public LiveData<PagedList<NoteSummary>> searchNotes(String text, NoteListQuery listQuery) {
+        String matchExpression = NoteSearchQuery.toMatchExpression(text);
+        if (matchExpression.isEmpty()) {
+            return getNotes(listQuery);
         }
+        // Search results are reloaded on any change rather than edited in place
+        show(null);
+        return new LivePagedListBuilder<>(new NoteSearchDataSourceFactory(database, matchExpression)
+                .mapByPage(textLayout), pageConfig())
+                .setFetchExecutor(database.getQueryExecutor())
+                .build();
     }
 
-    // Async task used to delete all notes
-    private static class DeleteAllNotesAsyncTask extends AsyncTask<Void, Void, Void> {
-        // Declare an instance of the NoteDao
-        private NoteDao noteDao;
+    // Pages through the notes stored within the database in the order of the query, only the pages near
+    // what is on screen are held in memory. Placeholders are off because the keyset data source doesn't
+    // count rows. Pages are fetched on the database's query threads, where their text is also measured.
+    // Edits that keep a note in place come out of the factory's patched notes instead of a new page list.
+    private NoteList buildNotes(NoteListQuery query) {
+        NoteDataSourceFactory factory = new NoteDataSourceFactory(database, writer, query);
+        return new NoteList(factory, new LivePagedListBuilder<>(factory.mapByPage(textLayout), pageConfig())
+                .setFetchExecutor(database.getQueryExecutor())
+                .build());
+    }
 
-        // Construct method, passing in the noteDao
-        private DeleteAllNotesAsyncTask(NoteDao noteDao) {
-            this.noteDao = noteDao;
+    // Makes getPatchedNotes pass on the in place edits of the list (none if null) instead of the list shown
+    // before, whose data source may still be following the writer.
+    private void show(NoteList list) {
+        if (list == shownList) {
+            return;
         }
-
-        // Perform task in background
-        @Override
-        protected Void doInBackground(Void... voids) {
-            noteDao.deleteAllNotes();
-            return null;
+        if (shownList != null) {
+            patchedNotes.removeSource(shownList.factory.getPatchedNotes());
+        }
+        shownList = list;
+        if (list != null) {
+            patchedNotes.addSource(list.factory.getPatchedNotes(), new Observer<List<NoteSummary>>() {
+                @Override
+                public void onChanged(List<NoteSummary> notes) {
+                    patchedNotes.setValue(notes);
+                }
+            });
         }
     }
+
+    // Paging settings shared by the note list and the search results
+    private static PagedList.Config pageConfig() {
+        return new PagedList.Config.Builder()
+                .setPageSize(PAGE_SIZE)
+                .setPrefetchDistance(PAGE_SIZE)
+                .setEnablePlaceholders(false)
+                .build();
+    }
 }
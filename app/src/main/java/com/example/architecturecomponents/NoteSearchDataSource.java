@@ -0,0 +1,93 @@
+package com.example.architecturecomponents;
+
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+import androidx.paging.PositionalDataSource;
+import androidx.room.InvalidationTracker;
+
+// Data source for the search results. On the first load it runs the indexed FTS query, which only returns
+// the IDs and matchinfo of the hits, and ranks them. The notes themselves are then loaded by ID a page
+// at a time as the results are scrolled.
+public class NoteSearchDataSource extends PositionalDataSource<NoteSummary> {
+    // Declare the database, the DAO, the FTS expression and the observer used to spot changes.
+    private final NoteDatabase database;
+    private final NoteDao noteDao;
+    private final String matchExpression;
+    private final InvalidationTracker.Observer observer;
+
+    // IDs of the hits in ranked order, worked out on the first load
+    private int[] rankedIds = new int[0];
+
+    // Constructor, takes the database and the MATCH expression from NoteSearchQuery.
+    public NoteSearchDataSource(NoteDatabase database, String matchExpression) {
+        this.database = database;
+        this.matchExpression = matchExpression;
+        noteDao = database.timedNoteDao();
+
+        // Any change to the notes can change the results, so the search is re-run.
+        observer = new InvalidationTracker.Observer("note_table") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                invalidate();
+            }
+        };
+        database.getInvalidationTracker().addObserver(observer);
+
+        // Stop observing once invalidated, otherwise old data sources would never be let go.
+        addInvalidatedCallback(new InvalidatedCallback() {
+            @Override
+            public void onInvalidated() {
+                NoteSearchDataSource.this.database.getInvalidationTracker().removeObserver(observer);
+            }
+        });
+    }
+
+    // Runs the search, ranks the hits and loads the first page of notes.
+    @Override
+    public void loadInitial(@NonNull LoadInitialParams params, @NonNull LoadInitialCallback<NoteSummary> callback) {
+        rankedIds = NoteSearchRanker.rank(noteDao.searchMatches(matchExpression),
+                NoteSearchRanker.MAX_RESULTS);
+        int total = rankedIds.length;
+        int position = computeInitialLoadPosition(params, total);
+        int size = computeInitialLoadSize(params, position, total);
+        callback.onResult(loadNotes(position, size), position, total);
+    }
+
+    // Loads a later page of notes from the ranked IDs.
+    @Override
+    public void loadRange(@NonNull LoadRangeParams params, @NonNull LoadRangeCallback<NoteSummary> callback) {
+        callback.onResult(loadNotes(params.startPosition, params.loadSize));
+    }
+
+    // Loads the notes for the given range of ranked IDs, keeping them in ranked order.
+    private List<NoteSummary> loadNotes(int position, int size) {
+        int end = Math.min(position + size, rankedIds.length);
+        if (position >= end) {
+            return Collections.emptyList();
+        }
+        List<Integer> ids = new ArrayList<>(end - position);
+        for (int i = position; i < end; i++) {
+            ids.add(rankedIds[i]);
+        }
+        // The IN query returns the notes in any order, so put them back by ID.
+        SparseArray<NoteSummary> notesById = new SparseArray<>(ids.size());
+        for (NoteSummary note : noteDao.getSummariesByIds(ids)) {
+            notesById.put(note.getId(), note);
+        }
+        List<NoteSummary> notes = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            NoteSummary note = notesById.get(id);
+            // A note deleted since the search ran is skipped, the change invalidates this source anyway.
+            if (note != null) {
+                notes.add(note);
+            }
+        }
+        return notes;
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.architecturecomponents;
+
+import androidx.annotation.NonNull;
+import androidx.paging.DataSource;
+
+// Factory used by the paged list builder to create a new NoteSearchDataSource for a search, each time
+// the previous one is invalidated by a change to the note table.
+public class NoteSearchDataSourceFactory extends DataSource.Factory<Integer, NoteSummary> {
+    // Declare the database and the FTS MATCH expression being searched for
+    private final NoteDatabase database;
+    private final String matchExpression;
+
+    // Constructor, takes the database instance and the MATCH expression
+    public NoteSearchDataSourceFactory(NoteDatabase database, String matchExpression) {
+        this.database = database;
+        this.matchExpression = matchExpression;
+    }
+
+    // Creates a fresh data source
+    @NonNull
+    @Override
+    public DataSource<Integer, NoteSummary> create() {
+        return new NoteSearchDataSource(database, matchExpression);
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.architecturecomponents;
+
+import java.util.Locale;
+
+// Turns what the user types into the search box into an FTS MATCH expression. The text is split into
+// tokens the same way the FTS "simple" tokenizer splits the notes (ASCII letters and digits, plus any
+// non-ASCII character), and each token becomes a prefix search. Everything else is dropped, so quotes,
+// dashes, asterisks etc typed by the user can never turn into FTS syntax errors.
+public class NoteSearchQuery {
+
+    // Returns the MATCH expression, for example "shop list" becomes "shop* list*". Returns an empty string
+    // if there is nothing searchable in the text.
+    public static String toMatchExpression(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder expression = new StringBuilder();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            // The end of the text counts as a separator, so the last token is written.
+            boolean tokenChar = i < text.length() && isTokenChar(text.charAt(i));
+            if (tokenChar && start == -1) {
+                start = i;
+            } else if (!tokenChar && start != -1) {
+                if (expression.length() > 0) {
+                    expression.append(' ');
+                }
+                expression.append(text.substring(start, i).toLowerCase(Locale.ROOT)).append('*');
+                start = -1;
+            }
+        }
+        return expression.toString();
+    }
+
+    // Matches the FTS simple tokenizer, ASCII letters/digits and all non-ASCII characters are part of tokens.
+    private static boolean isTokenChar(char c) {
+        return c > 127 || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    // Not to be created, only holds static methods.
+    private NoteSearchQuery() {
+    }
+}
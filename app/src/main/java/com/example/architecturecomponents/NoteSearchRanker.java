@@ -0,0 +1,85 @@
+package com.example.architecturecomponents;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// Ranks full text search hits. FTS4 has no built in ranking, so each hit's matchinfo 'pcx' blob is scored
+// the way the SQLite FTS documentation suggests: for every phrase and column, the hits in this note divided
+// by the hits across all notes, weighted per column. A match in the title counts for more than one in the
+// description, and rare words count for more than common ones.
+public class NoteSearchRanker {
+    // Weight of a hit in each column of note_fts, in column order (title, description)
+    private static final double[] COLUMN_WEIGHTS = {2.0, 1.0};
+
+    // Most results kept for a single search. Very broad searches (a single letter for example) only show the
+    // best this many hits, which keeps the ranked ID list and the paging over it small on a large table.
+    public static final int MAX_RESULTS = 2000;
+
+    // Scores a single matchinfo 'pcx' blob. The blob is a list of 32 bit unsigned ints in the device's
+    // byte order: the phrase count, the column count, then 3 ints per phrase/column pair of which the first
+    // two are the hits in this row and the hits in all rows.
+    public static double score(byte[] matchInfo) {
+        if (matchInfo == null || matchInfo.length < 8) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder());
+        int phrases = buffer.getInt(0);
+        int columns = buffer.getInt(4);
+        double score = 0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns; column++) {
+                int offset = 4 * (2 + 3 * (phrase * columns + column));
+                if (offset + 8 > matchInfo.length) {
+                    return score;
+                }
+                long hits = buffer.getInt(offset) & 0xFFFFFFFFL;
+                long globalHits = buffer.getInt(offset + 4) & 0xFFFFFFFFL;
+                if (hits > 0 && globalHits > 0) {
+                    double weight = column < COLUMN_WEIGHTS.length ? COLUMN_WEIGHTS[column] : 1.0;
+                    score += ((double) hits / globalHits) * weight;
+                }
+            }
+        }
+        return score;
+    }
+
+    // Returns the IDs of the matches, best first. Equal scores are ordered newest (highest ID) first.
+    public static int[] rank(List<NoteMatch> matches) {
+        return rank(matches, matches.size());
+    }
+
+    // Returns the IDs of the best "limit" matches, best first. Every match is scored before any are dropped,
+    // so the cap never leaves out a better hit than one it keeps.
+    public static int[] rank(List<NoteMatch> matches, int limit) {
+        final int count = matches.size();
+        final double[] scores = new double[count];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            scores[i] = score(matches.get(i).matchInfo);
+            order[i] = i;
+        }
+        final List<NoteMatch> hits = matches;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int byScore = Double.compare(scores[b], scores[a]);
+                if (byScore != 0) {
+                    return byScore;
+                }
+                return Integer.compare(hits.get(b).id, hits.get(a).id);
+            }
+        });
+        int[] ids = new int[Math.min(count, Math.max(limit, 0))];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = matches.get(order[i]).id;
+        }
+        return ids;
+    }
+
+    // Not to be created, only holds static methods.
+    private NoteSearchRanker() {
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.architecturecomponents;
+
+// The orders the note list can be sorted in. Each one sorts on a single column with the note ID breaking
+// ties, which gives every note a unique position for keyset paging, and has a matching index on Note.
+public enum NoteSort {
+    // Highest priority first
+    PRIORITY("priority", false),
+    // Title from A to Z, ignoring case
+    TITLE("title", true),
+    // Newest note first
+    CREATED("createdAt", false),
+    // Most recently changed note first
+    UPDATED("updatedAt", false);
+
+    // The column sorted on, and whether it is sorted smallest first
+    private final String column;
+    private final boolean ascending;
+
+    NoteSort(String column, boolean ascending) {
+        this.column = column;
+        this.ascending = ascending;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    // Returns the value of the sort column for a note, used as the key for the next or previous page.
+    public Object keyOf(NoteSummary note) {
+        switch (this) {
+            case PRIORITY:
+                return note.getPriority();
+            case TITLE:
+                return note.getTitle();
+            case CREATED:
+                return note.getCreatedAt();
+            default:
+                return note.getUpdatedAt();
+        }
+    }
+}
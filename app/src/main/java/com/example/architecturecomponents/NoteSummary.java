@@ -0,0 +1,101 @@
+package com.example.architecturecomponents;
+
+import androidx.room.Ignore;
+
+// Light version of a Note used by the list. It only holds what a list item shows: the title, the priority
+// and the start of the description. The list queries in NoteDao select just these columns, so long
+// descriptions are never copied into the cursor or kept in memory for the list. The full Note is only
+// loaded (by ID) when it is opened for editing.
+public class NoteSummary {
+    // Number of characters of the description kept for the list item
+    public static final int PREVIEW_LENGTH = 200;
+
+    // ID of the note
+    private int id;
+
+    // The note title
+    private String title;
+
+    // The first PREVIEW_LENGTH characters of the note description
+    private String descriptionPreview;
+
+    // The priority of the note
+    private int priority;
+
+    // When the note was last written, changes on every write so the list can tell an item has changed
+    // without comparing its text
+    private long updatedAt;
+
+    // When the note was created, needed as the key when the list is sorted by it
+    private long createdAt;
+
+    // The title and description measured for the list row by NoteTextLayout while the page was loaded,
+    // null if they weren't. Not columns.
+    @Ignore
+    private CharSequence measuredTitle;
+    @Ignore
+    private CharSequence measuredDescription;
+
+    //Constructor for the class, used by Room with the columns of the list queries
+    public NoteSummary(int id, String title, String descriptionPreview, int priority, long updatedAt, long createdAt) {
+        this.id = id;
+        this.title = title;
+        this.descriptionPreview = descriptionPreview;
+        this.priority = priority;
+        this.updatedAt = updatedAt;
+        this.createdAt = createdAt;
+    }
+
+    // Get functions to return the values.
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getDescriptionPreview() {
+        return descriptionPreview;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public CharSequence getMeasuredTitle() {
+        return measuredTitle;
+    }
+
+    public CharSequence getMeasuredDescription() {
+        return measuredDescription;
+    }
+
+    // Set on the paging thread before the page is handed to the list
+    public void setMeasuredText(CharSequence title, CharSequence description) {
+        measuredTitle = title;
+        measuredDescription = description;
+    }
+
+    // Changes the loaded summary to match the note as it was written, so the list can show an edit without
+    // reloading. The new text isn't measured, the row falls back to plain text for it. Only called on the
+    // main thread, for a note whose sort value hasn't changed (see NoteListQuery.keepsPosition).
+    public void applyUpdate(Note note) {
+        String description = note.getDescription();
+        title = note.getTitle();
+        descriptionPreview = description != null && description.length() > PREVIEW_LENGTH
+                ? description.substring(0, PREVIEW_LENGTH) : description;
+        priority = note.getPriority();
+        updatedAt = note.getUpdatedAt();
+        measuredTitle = null;
+        measuredDescription = null;
+    }
+}
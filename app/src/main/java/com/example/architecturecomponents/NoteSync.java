@@ -0,0 +1,157 @@
+package com.example.architecturecomponents;
+
+import android.content.SharedPreferences;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Syncs the notes with a server by sending only what changed. A sync first pushes the notes logged in
+// note_changelog since the last push, a batch per request, then pulls the notes changed on the server since
+// the cursor it got last time, a page per request. So a sync costs in proportion to the changes on either
+// side rather than to the number of notes.
+// Conflicts are settled by version: every note has the server version it was last synced at, and an edit
+// made to an older version than the server's is turned down. The server's copy then replaces the local
+// one, so the edit made first (the one that got to the server first) wins. The results of each push and
+// pull are written through NoteWriter in one transaction, so the list sees them like any other change.
+public class NoteSync {
+    // Changelog rows pushed per request, and notes asked for per pull
+    public static final int PUSH_BATCH = 200;
+    public static final int PULL_BATCH = 500;
+
+    // Names the requests are recorded under in NoteMetrics
+    private static final String METRIC_PUSH = "NoteSync.push";
+    private static final String METRIC_PULL = "NoteSync.pull";
+
+    // Where the pull cursor is kept between syncs
+    private static final String KEY_CURSOR = "cursor";
+
+    // Declare the DAO the changes are read with, the writer they are saved with, the server and the
+    // saved sync state
+    private final NoteDao noteDao;
+    private final NoteWriter writer;
+    private final NoteSyncClient client;
+    private final SharedPreferences state;
+
+    // Constructor, takes the DAO and the writer from the repository, the client for the server and where
+    // to keep the pull cursor
+    public NoteSync(NoteDao noteDao, NoteWriter writer, NoteSyncClient client, SharedPreferences state) {
+        this.noteDao = noteDao;
+        this.writer = writer;
+        this.client = client;
+        this.state = state;
+    }
+
+    // Pushes the local changes then pulls the server's, returns what was done. Stops at the first request
+    // that fails, anything already pushed or pulled stays done and the rest is picked up by the next sync.
+    // Runs on the calling thread, so must not be called on the main thread. One sync runs at a time.
+    public synchronized Result sync() throws IOException, InterruptedException {
+        int[] pushed = push();
+        int pulled = pull();
+        return new Result(pushed[0], pushed[1], pulled);
+    }
+
+    // Pushes the changelog a batch at a time. Each note is sent as it is now, however many times it
+    // changed. Returns the number of notes the server took and the number that conflicted.
+    private int[] push() throws IOException, InterruptedException {
+        int accepted = 0;
+        int conflicts = 0;
+        long lastPushed = 0;
+        List<NoteChangelogEntry> entries;
+        while (!(entries = noteDao.getChangelog(PUSH_BATCH)).isEmpty()) {
+            long lastSeq = entries.get(entries.size() - 1).getSeq();
+            // A push that was sent but not saved would be sent again forever
+            if (entries.get(0).getSeq() <= lastPushed) {
+                throw new IOException("Pushed changes are still in the changelog");
+            }
+            Set<String> guids = new LinkedHashSet<>();
+            for (NoteChangelogEntry entry : entries) {
+                guids.add(entry.getGuid());
+            }
+            List<Note> notes = noteDao.getNotesByGuids(new ArrayList<>(guids));
+            NoteBodies.loadInto(noteDao, notes);
+            // Notes removed for good since they were changed (by the purge or delete all) are pushed as
+            // deleted, whatever version the server has
+            for (Note note : notes) {
+                guids.remove(note.getGuid());
+            }
+            for (String guid : guids) {
+                Note removed = new Note("", "", NoteListQuery.MIN_PRIORITY);
+                removed.setGuid(guid);
+                removed.setVersion(NoteSyncClient.ANY_VERSION);
+                removed.setDeletedAt(1);
+                notes.add(removed);
+            }
+
+            long start = System.nanoTime();
+            NoteSyncClient.PushResult result;
+            try {
+                result = client.push(notes);
+            } catch (IOException e) {
+                NoteMetrics.getInstance().recordError(METRIC_PUSH, System.nanoTime() - start);
+                throw e;
+            }
+            NoteMetrics.getInstance().record(METRIC_PUSH, System.nanoTime() - start, notes.size());
+            save(lastSeq, result.accepted, result.conflicts);
+            accepted += result.accepted.size();
+            conflicts += result.conflicts.size();
+            lastPushed = lastSeq;
+        }
+        return new int[]{accepted, conflicts};
+    }
+
+    // Pulls the server's changes a page at a time, saving the cursor after each page. Returns the number of
+    // local notes changed.
+    private int pull() throws IOException, InterruptedException {
+        long cursor = state.getLong(KEY_CURSOR, 0);
+        int applied = 0;
+        NoteSyncClient.PullResult page;
+        do {
+            long start = System.nanoTime();
+            try {
+                page = client.pull(cursor, PULL_BATCH);
+            } catch (IOException e) {
+                NoteMetrics.getInstance().recordError(METRIC_PULL, System.nanoTime() - start);
+                throw e;
+            }
+            NoteMetrics.getInstance().record(METRIC_PULL, System.nanoTime() - start, page.notes.size());
+            applied += save(0, Collections.<String, Integer>emptyMap(), page.notes);
+            cursor = page.cursor;
+            state.edit().putLong(KEY_CURSOR, cursor).apply();
+        } while (page.more);
+        return applied;
+    }
+
+    // Saves a push or pull through the writer, the cursor and changelog only move on once it is committed
+    private int save(long pushedSeq, Map<String, Integer> versions, List<Note> serverNotes)
+            throws IOException, InterruptedException {
+        int applied = writer.applySync(pushedSeq, versions, serverNotes);
+        if (applied < 0) {
+            throw new IOException("Couldn't save the synced notes");
+        }
+        return applied;
+    }
+
+    // What a sync did: local notes the server took, local notes replaced by the server's copy as they had
+    // been changed there first, and local notes changed by the server's changes.
+    public static class Result {
+        public final int pushed;
+        public final int conflicts;
+        public final int pulled;
+
+        public Result(int pushed, int conflicts, int pulled) {
+            this.pushed = pushed;
+            this.conflicts = conflicts;
+            this.pulled = pulled;
+        }
+
+        @Override
+        public String toString() {
+            return "pushed=" + pushed + " conflicts=" + conflicts + " pulled=" + pulled;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.architecturecomponents;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Talks to the sync server over HTTP for NoteSync. Bodies are JSON compressed with gzip both ways, so
+// pushing or pulling a batch of notes is one small request. The protocol:
+//   POST push                        {"notes": [note, ...]}
+//                                 -> {"accepted": [{"guid": g, "version": v}, ...], "conflicts": [note, ...]}
+//   GET changes?since=c&limit=n   -> {"notes": [note, ...], "cursor": c, "more": true|false}
+// where a note is {"guid", "version", "title", "description", "priority", "createdAt", "updatedAt",
+// "deleted"}. A pushed note's version is the server version it was edited from. The server takes the
+// note if that is still its latest version and gives it the next one, otherwise it sends its own copy
+// back as a conflict. Pulled notes have their server version, and come with the cursor to ask for the
+// changes after them next time.
+public class NoteSyncClient {
+    // Version pushed for a note that is gone locally, the server takes the delete whatever version it has
+    public static final int ANY_VERSION = -1;
+
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+
+    // The JSON field names
+    static final String NOTES = "notes";
+    static final String ACCEPTED = "accepted";
+    static final String CONFLICTS = "conflicts";
+    static final String CURSOR = "cursor";
+    static final String MORE = "more";
+    static final String GUID = "guid";
+    static final String VERSION = "version";
+    static final String TITLE = "title";
+    static final String DESCRIPTION = "description";
+    static final String PRIORITY = "priority";
+    static final String CREATED_AT = "createdAt";
+    static final String UPDATED_AT = "updatedAt";
+    static final String DELETED = "deleted";
+
+    // Address of the server, the push and changes paths are relative to it
+    private final String serverUrl;
+
+    // Constructor, takes the address of the server
+    public NoteSyncClient(URL serverUrl) {
+        String url = serverUrl.toString();
+        this.serverUrl = url.endsWith("/") ? url : url + "/";
+    }
+
+    // Sends changed notes to the server, returns the versions it gave the ones it took and its own copies
+    // of the ones that conflicted.
+    public PushResult push(List<Note> notes) throws IOException {
+        HttpURLConnection connection = open("push");
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            // The compressed length isn't known up front, so the body is sent in chunks
+            connection.setChunkedStreamingMode(0);
+            try (JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(connection.getOutputStream()), "UTF-8")))) {
+                json.beginObject();
+                json.name(NOTES);
+                writeNotes(json, notes);
+                json.endObject();
+            }
+
+            Map<String, Integer> accepted = new HashMap<>();
+            List<Note> conflicts = new ArrayList<>();
+            try (JsonReader json = readResponse(connection)) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    String name = json.nextName();
+                    if (ACCEPTED.equals(name)) {
+                        json.beginArray();
+                        while (json.hasNext()) {
+                            readAccepted(json, accepted);
+                        }
+                        json.endArray();
+                    } else if (CONFLICTS.equals(name)) {
+                        conflicts = readNotes(json);
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endObject();
+            }
+            return new PushResult(accepted, conflicts);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    // Gets up to "limit" notes changed on the server after the cursor, oldest change first.
+    public PullResult pull(long cursor, int limit) throws IOException {
+        HttpURLConnection connection = open("changes?since=" + cursor + "&limit=" + limit);
+        try {
+            List<Note> notes = new ArrayList<>();
+            long nextCursor = cursor;
+            boolean more = false;
+            try (JsonReader json = readResponse(connection)) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    String name = json.nextName();
+                    if (NOTES.equals(name)) {
+                        notes = readNotes(json);
+                    } else if (CURSOR.equals(name)) {
+                        nextCursor = json.nextLong();
+                    } else if (MORE.equals(name)) {
+                        more = json.nextBoolean();
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endObject();
+            }
+            return new PullResult(notes, nextCursor, more);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(serverUrl + path).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        // Asked for by hand, so the response is decompressed here the same way on every version of Android
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        return connection;
+    }
+
+    // Checks the response was successful and returns a reader over its body, decompressed if need be
+    private static JsonReader readResponse(HttpURLConnection connection) throws IOException {
+        int code = connection.getResponseCode();
+        if (code != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Sync server returned " + code + " " + connection.getResponseMessage());
+        }
+        InputStream in = connection.getInputStream();
+        if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+            in = new GZIPInputStream(in);
+        }
+        return new JsonReader(new BufferedReader(new InputStreamReader(in, "UTF-8")));
+    }
+
+    private static void readAccepted(JsonReader json, Map<String, Integer> accepted) throws IOException {
+        String guid = null;
+        int version = 0;
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (GUID.equals(name)) {
+                guid = json.nextString();
+            } else if (VERSION.equals(name)) {
+                version = json.nextInt();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        if (guid != null) {
+            accepted.put(guid, version);
+        }
+    }
+
+    // Writes the notes as a JSON array, a deleted note only needs its guid and version. Also used by the
+    // stand-in server in the tests.
+    static void writeNotes(JsonWriter json, List<Note> notes) throws IOException {
+        json.beginArray();
+        for (Note note : notes) {
+            json.beginObject();
+            json.name(GUID).value(note.getGuid());
+            json.name(VERSION).value(note.getVersion());
+            json.name(DELETED).value(note.getDeletedAt() > 0);
+            if (note.getDeletedAt() == 0) {
+                json.name(TITLE).value(note.getTitle());
+                json.name(DESCRIPTION).value(note.getDescription());
+                json.name(PRIORITY).value(note.getPriority());
+                json.name(CREATED_AT).value(note.getCreatedAt());
+                json.name(UPDATED_AT).value(note.getUpdatedAt());
+            }
+            json.endObject();
+        }
+        json.endArray();
+    }
+
+    // Reads a JSON array of notes. A deleted note is marked with a deletedAt of 1, when it was deleted
+    // locally is up to whoever applies it. Notes without a guid can't be matched to anything and are skipped.
+    // A priority out of range fails the whole read, as for an import, so none of the page is applied.
+    static List<Note> readNotes(JsonReader json) throws IOException {
+        List<Note> notes = new ArrayList<>();
+        json.beginArray();
+        while (json.hasNext()) {
+            String guid = null;
+            int version = 0;
+            boolean deleted = false;
+            String title = "";
+            String description = "";
+            int priority = NoteListQuery.MIN_PRIORITY;
+            long createdAt = 0;
+            long updatedAt = 0;
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (json.peek() == JsonToken.NULL) {
+                    json.skipValue();
+                } else if (GUID.equals(name)) {
+                    guid = json.nextString();
+                } else if (VERSION.equals(name)) {
+                    version = json.nextInt();
+                } else if (DELETED.equals(name)) {
+                    deleted = json.nextBoolean();
+                } else if (TITLE.equals(name)) {
+                    title = json.nextString();
+                } else if (DESCRIPTION.equals(name)) {
+                    description = json.nextString();
+                } else if (PRIORITY.equals(name)) {
+                    priority = json.nextInt();
+                    NoteTransfer.checkPriority(priority);
+                } else if (CREATED_AT.equals(name)) {
+                    createdAt = json.nextLong();
+                } else if (UPDATED_AT.equals(name)) {
+                    updatedAt = json.nextLong();
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+            if (guid == null) {
+                continue;
+            }
+            Note note = new Note(title, description, priority);
+            note.setGuid(guid);
+            note.setVersion(version);
+            note.setDeletedAt(deleted ? 1 : 0);
+            note.setCreatedAt(createdAt);
+            note.setUpdatedAt(updatedAt);
+            notes.add(note);
+        }
+        json.endArray();
+        return notes;
+    }
+
+    // What the server did with a push: the new versions of the notes it took, by guid, and its own copies
+    // of the notes that had been changed there since they were last pulled.
+    public static class PushResult {
+        public final Map<String, Integer> accepted;
+        public final List<Note> conflicts;
+
+        public PushResult(Map<String, Integer> accepted, List<Note> conflicts) {
+            this.accepted = accepted;
+            this.conflicts = conflicts;
+        }
+    }
+
+    // A page of changes from the server, the cursor to carry on from and whether there are more after it
+    public static class PullResult {
+        public final List<Note> notes;
+        public final long cursor;
+        public final boolean more;
+
+        public PullResult(List<Note> notes, long cursor, boolean more) {
+            this.notes = notes;
+            this.cursor = cursor;
+            this.more = more;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.example.architecturecomponents;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Imports and exports notes as JSON or CSV. Both directions stream: an import parses one note at a time and
+// hands them to the NoteWriter in chunks, each chunk being inserted in one transaction, and an export reads
+// the table a chunk at a time by ID. Only one chunk of notes is ever held in memory.
+// A transfer can be cancelled from another thread, it stops at the next note. Notes already handed to the
+// writer by a cancelled import are still saved.
+public class NoteTransfer {
+    // Notes per chunk, for both the import transactions and the export reads
+    public static final int CHUNK_SIZE = 500;
+
+    // The CSV header, also the names of the JSON fields
+    private static final String TITLE = "title";
+    private static final String DESCRIPTION = "description";
+    private static final String PRIORITY = "priority";
+
+    // File formats that can be imported and exported
+    public enum Format {
+        JSON,
+        CSV
+    }
+
+    // Told how many notes have been transferred so far, called after each chunk
+    public interface Listener {
+        void onProgress(int notes);
+    }
+
+    // Where a transfer has got to, shown to the user by MainActivity
+    public static class Progress {
+        // True for an import, false for an export
+        public final boolean importing;
+        // Notes transferred so far
+        public final int notes;
+        // Set once the transfer has stopped, along with whether it was cancelled or failed
+        public final boolean finished;
+        public final boolean cancelled;
+        public final String error;
+
+        public Progress(boolean importing, int notes, boolean finished, boolean cancelled, String error) {
+            this.importing = importing;
+            this.notes = notes;
+            this.finished = finished;
+            this.cancelled = cancelled;
+            this.error = error;
+        }
+    }
+
+    // Thrown when an import stops on a note it can't read. The notes before the chunk it was reading have
+    // been committed, "notes" of them, so the user can be told the file was partly imported.
+    public static class ImportException extends IOException {
+        public final int notes;
+
+        ImportException(int notes, Exception cause) {
+            super(cause.getMessage() == null ? cause.toString() : cause.getMessage(), cause);
+            this.notes = notes;
+        }
+    }
+
+    // Declare the DAO used for exports, the writer used for imports and the cancelled flag
+    private final NoteDao noteDao;
+    private final NoteWriter writer;
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    // Constructor, takes the DAO and the writer from the repository
+    public NoteTransfer(NoteDao noteDao, NoteWriter writer) {
+        this.noteDao = noteDao;
+        this.writer = writer;
+    }
+
+    // Asks the transfer to stop, can be called from any thread
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    // Imports the notes in the stream, working out the format from the first character ('[' for JSON).
+    // Returns the number of notes imported once they have all been committed. Runs on a background thread.
+    // If a note can't be read the import stops there with an ImportException, which says how many notes
+    // had been handed to the writer by then. Those are kept, and are committed before it is thrown.
+    public int importNotes(InputStream stream, Listener listener) throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+        NoteSource source = firstChar(reader) == '[' ? new JsonNoteSource(reader) : new CsvNoteSource(reader);
+
+        List<Note> chunk = new ArrayList<>(CHUNK_SIZE);
+        int count = 0;
+        Note note;
+        try {
+            while (!cancelled.get() && (note = source.next()) != null) {
+                chunk.add(note);
+                if (chunk.size() == CHUNK_SIZE) {
+                    // Waits here if the writer is behind, so parsing never gets far ahead of the database.
+                    writer.insertAll(chunk);
+                    count += chunk.size();
+                    chunk = new ArrayList<>(CHUNK_SIZE);
+                    listener.onProgress(count);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // The chunk being read is dropped, the ones before it are already queued and can't be taken back
+            if (count > 0) {
+                writer.flush();
+            }
+            throw new ImportException(count, e);
+        }
+        if (!chunk.isEmpty()) {
+            writer.insertAll(chunk);
+            count += chunk.size();
+        }
+        // Wait for the last chunks to be committed before reporting the import as finished.
+        writer.flush();
+        listener.onProgress(count);
+        return count;
+    }
+
+    // Exports every note to the stream in the given format. Returns the number of notes exported. Runs on a
+    // background thread.
+    public int exportNotes(OutputStream stream, Format format, Listener listener) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"));
+        JsonWriter json = null;
+        if (format == Format.JSON) {
+            json = new JsonWriter(out);
+            json.setIndent("  ");
+            json.beginArray();
+        } else {
+            NoteCsv.writeRecord(out, TITLE, DESCRIPTION, PRIORITY);
+        }
+
+        int count = 0;
+        int lastId = 0;
+        List<Note> chunk;
+        // Reads the table a chunk at a time, each chunk starting after the last ID of the one before.
+        while (!cancelled.get() && !(chunk = noteDao.getNotesAfterId(lastId, CHUNK_SIZE)).isEmpty()) {
+            NoteBodies.loadInto(noteDao, chunk);
+            for (Note note : chunk) {
+                if (json != null) {
+                    json.beginObject();
+                    json.name(TITLE).value(note.getTitle());
+                    json.name(DESCRIPTION).value(note.getDescription());
+                    json.name(PRIORITY).value(note.getPriority());
+                    json.endObject();
+                } else {
+                    NoteCsv.writeRecord(out, note.getTitle(), note.getDescription(),
+                            String.valueOf(note.getPriority()));
+                }
+            }
+            lastId = chunk.get(chunk.size() - 1).getId();
+            count += chunk.size();
+            listener.onProgress(count);
+        }
+
+        if (json != null) {
+            json.endArray();
+            json.flush();
+        }
+        out.flush();
+        return count;
+    }
+
+    // Returns the first character that isn't whitespace (or a byte order mark) without consuming it.
+    private static int firstChar(BufferedReader reader) throws IOException {
+        while (true) {
+            reader.mark(1);
+            int c = reader.read();
+            if (c == -1 || !(Character.isWhitespace(c) || c == '\uFEFF')) {
+                reader.reset();
+                return c;
+            }
+        }
+    }
+
+    // Creates an imported note, missing text becomes empty as the list and editor expect a title and description.
+    // A priority out of range is turned down rather than stored, the filters and the editor couldn't show it.
+    private static Note newNote(String title, String description, int priority) throws IOException {
+        checkPriority(priority);
+        return new Note(title == null ? "" : title, description == null ? "" : description, priority);
+    }
+
+    // Fails on a priority the app can't show: the filters and the editor only go from MIN_PRIORITY to
+    // MAX_PRIORITY. Also used for the notes pulled by a sync.
+    static void checkPriority(int priority) throws IOException {
+        if (priority < NoteListQuery.MIN_PRIORITY || priority > NoteListQuery.MAX_PRIORITY) {
+            throw new IOException("Priority must be from " + NoteListQuery.MIN_PRIORITY + " to "
+                    + NoteListQuery.MAX_PRIORITY + ": " + priority);
+        }
+    }
+
+    // Source of parsed notes, returns null once there are none left
+    private interface NoteSource {
+        Note next() throws IOException;
+    }
+
+    // Reads notes from a JSON array of {"title", "description", "priority"} objects.
+    private static class JsonNoteSource implements NoteSource {
+        private final JsonReader json;
+        private boolean started;
+
+        private JsonNoteSource(BufferedReader reader) {
+            json = new JsonReader(reader);
+        }
+
+        @Override
+        public Note next() throws IOException {
+            if (!started) {
+                json.beginArray();
+                started = true;
+            }
+            if (!json.hasNext()) {
+                json.endArray();
+                return null;
+            }
+            String title = null;
+            String description = null;
+            int priority = 1;
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (json.peek() == JsonToken.NULL) {
+                    json.skipValue();
+                } else if (TITLE.equals(name)) {
+                    title = json.nextString();
+                } else if (DESCRIPTION.equals(name)) {
+                    description = json.nextString();
+                } else if (PRIORITY.equals(name)) {
+                    priority = json.nextInt();
+                } else {
+                    // Unknown fields (such as an ID from another device) are ignored.
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+            return newNote(title, description, priority);
+        }
+    }
+
+    // Reads notes from CSV with a header row naming the title, description and priority columns.
+    private static class CsvNoteSource implements NoteSource {
+        private final BufferedReader reader;
+        private int titleColumn = -1;
+        private int descriptionColumn = -1;
+        private int priorityColumn = -1;
+
+        private CsvNoteSource(BufferedReader reader) throws IOException {
+            this.reader = reader;
+            List<String> header = NoteCsv.readRecord(reader);
+            if (header == null) {
+                return;
+            }
+            for (int i = 0; i < header.size(); i++) {
+                String name = header.get(i).trim().toLowerCase(Locale.ROOT);
+                if (TITLE.equals(name)) {
+                    titleColumn = i;
+                } else if (DESCRIPTION.equals(name)) {
+                    descriptionColumn = i;
+                } else if (PRIORITY.equals(name)) {
+                    priorityColumn = i;
+                }
+            }
+            if (titleColumn == -1 && descriptionColumn == -1) {
+                throw new IOException("CSV header needs a title or description column");
+            }
+        }
+
+        @Override
+        public Note next() throws IOException {
+            List<String> record;
+            // Blank lines are skipped
+            do {
+                record = NoteCsv.readRecord(reader);
+            } while (record != null && record.size() == 1 && record.get(0).isEmpty());
+            if (record == null) {
+                return null;
+            }
+            String priority = field(record, priorityColumn);
+            try {
+                return newNote(field(record, titleColumn), field(record, descriptionColumn),
+                        priority == null || priority.trim().isEmpty() ? 1 : Integer.parseInt(priority.trim()));
+            } catch (NumberFormatException e) {
+                throw new IOException("Priority is not a number: " + priority, e);
+            }
+        }
+
+        private static String field(List<String> record, int column) {
+            return column >= 0 && column < record.size() ? record.get(column) : null;
+        }
+    }
+}
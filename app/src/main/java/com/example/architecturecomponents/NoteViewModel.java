@@ -1,49 +1,454 @@
 package com.example.architecturecomponents;
 
 import android.app.Application;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import androidx.annotation.NonNull;
+import androidx.arch.core.util.Function;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
-
-import java.util.List;
+import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Observer;
+import androidx.lifecycle.Transformations;
+import androidx.paging.PagedList;
 
 public class NoteViewModel extends AndroidViewModel {
+    // How long the search text has to stay the same before the search is run, in milliseconds
+    private static final long SEARCH_DEBOUNCE_MS = 300;
+
     // Declare variables for instances of the NoteRepository and LiveData.
     private NoteRepository repository;
-    private LiveData<List<Note>> allNotes;
+    private LiveData<PagedList<NoteSummary>> notes;
+
+    // The search text currently applied to the list, and the text waiting for the debounce to finish
+    private MutableLiveData<String> searchText = new MutableLiveData<>();
+    private String pendingSearchText = "";
+
+    // The sort and priority filter of the list, and a trigger set whenever it or the search text changes
+    private MutableLiveData<NoteListQuery> listQuery = new MutableLiveData<>();
+    private MediatorLiveData<Boolean> listChanged = new MediatorLiveData<>();
+
+    // Used to run the search once the user stops typing
+    private Handler handler = new Handler(Looper.getMainLooper());
+    private Runnable applySearch = new Runnable() {
+        @Override
+        public void run() {
+            searchText.setValue(pendingSearchText);
+        }
+    };
+
+    // Number of notes, loaded once something asks for it
+    private LiveData<Integer> noteCount;
+
+    // IDs of the notes deleted while the undo button has been showing
+    private List<Integer> undoableIds = new ArrayList<>();
+
+    // IDs of the notes picked in the list, in the order they were picked. A new set is set on every change,
+    // empty when nothing is picked. Kept here so the picked notes survive the activity being recreated.
+    private MediatorLiveData<Set<Integer>> selection = new MediatorLiveData<>();
+    // IDs of every note in the list while "select all" is loading them
+    private LiveData<List<Integer>> loadingAllIds;
+
+    // Runs imports, exports, syncs and deleting all notes in the background, one at a time, and reports their progress
+    private ExecutorService transferExecutor = Executors.newSingleThreadExecutor();
+    private MutableLiveData<DeleteAllProgress> deleteAllProgress = new MutableLiveData<>();
+    private MutableLiveData<NoteTransfer.Progress> transferProgress = new MutableLiveData<>();
+    private volatile NoteTransfer currentTransfer;
+    // What the latest sync did, or why it failed
+    private MutableLiveData<String> syncResult = new MutableLiveData<>();
 
     //Constructor for the View Model which takes the application as context
     public NoteViewModel(@NonNull Application application) {
         super(application);
-        // repository instance is created using NoteRepository class, passed the application context
-        repository = new NoteRepository(application);
-        // All notes are populated into LiveData component
-        allNotes = repository.getAllNotes();
+        // Gets the repository instance, passed the application context
+        repository = NoteRepository.getInstance(application);
+        // The list shows the notes in the chosen sort and filter until there is search text, then the
+        // ranked search results.
+        searchText.setValue("");
+        listQuery.setValue(NoteListQuery.DEFAULT);
+        selection.setValue(Collections.<Integer>emptySet());
+        Observer<Object> changed = new Observer<Object>() {
+            @Override
+            public void onChanged(Object value) {
+                listChanged.setValue(true);
+            }
+        };
+        listChanged.addSource(searchText, changed);
+        listChanged.addSource(listQuery, changed);
+        notes = Transformations.switchMap(listChanged, new Function<Boolean, LiveData<PagedList<NoteSummary>>>() {
+            @Override
+            public LiveData<PagedList<NoteSummary>> apply(Boolean changed) {
+                return repository.searchNotes(searchText.getValue(), listQuery.getValue());
+            }
+        });
+    }
+
+    // Deletes note via the repository. The note is added to the ones the undo button brings back, returns
+    // how many that is now.
+    public int delete(NoteSummary note) {
+        repository.delete(Collections.singletonList(note.getId()));
+        undoableIds.add(note.getId());
+        return undoableIds.size();
+    }
+
+    // Brings back the notes deleted since the undo button was last shown.
+    public void undoDelete() {
+        if (!undoableIds.isEmpty()) {
+            repository.restore(new ArrayList<>(undoableIds));
+            undoableIds.clear();
+        }
+    }
+
+    // Called once the undo button has gone, the deletes can no longer be undone from here.
+    public void clearUndo() {
+        undoableIds.clear();
+    }
+
+    // Returns the LiveData of the IDs of the picked notes
+    public LiveData<Set<Integer>> getSelection() {
+        return selection;
     }
 
-    // Inserts a note via the repository
-    public void insert(Note note) {
-        repository.insert(note);
+    // Picks the note, or unpicks it if it was picked already
+    public void toggleSelected(NoteSummary note) {
+        Set<Integer> selected = new LinkedHashSet<>(selection.getValue());
+        if (!selected.remove(note.getId())) {
+            selected.add(note.getId());
+        }
+        setSelection(selected);
     }
 
-    // Updates a note via the repository
-    public void update(Note note) {
-        repository.update(note);
+    // Picks every note in the list, not only the ones loaded so far. The IDs are loaded in the background.
+    // Not offered while searching, as search results are ranked rather than listed by a query.
+    public void selectAll() {
+        if (loadingAllIds != null) {
+            return;
+        }
+        loadingAllIds = repository.getNoteIds(listQuery.getValue());
+        selection.addSource(loadingAllIds, new Observer<List<Integer>>() {
+            @Override
+            public void onChanged(List<Integer> ids) {
+                stopLoadingAllIds();
+                Set<Integer> selected = new LinkedHashSet<>(selection.getValue());
+                selected.addAll(ids);
+                setSelection(selected);
+            }
+        });
     }
 
-    // Deletes note via the repository
-    public void delete(Note note) {
-        repository.delete(note);
+    // Unpicks every note, including any "select all" still loading
+    public void clearSelection() {
+        stopLoadingAllIds();
+        if (!selection.getValue().isEmpty()) {
+            setSelection(Collections.<Integer>emptySet());
+        }
     }
 
-    // Deletes all notes via the repository (doesn't need to be passed a note)
+    // Deletes the picked notes in one transaction however many there are. They are added to the ones the
+    // undo button brings back, returns how many that is now.
+    public int deleteSelected() {
+        List<Integer> ids = new ArrayList<>(selection.getValue());
+        repository.delete(ids);
+        undoableIds.addAll(ids);
+        clearSelection();
+        return undoableIds.size();
+    }
+
+    // Gives the picked notes the priority in one transaction, returns how many notes were changed.
+    public int setSelectedPriority(int priority) {
+        List<Integer> ids = new ArrayList<>(selection.getValue());
+        repository.setPriority(ids, priority);
+        clearSelection();
+        return ids.size();
+    }
+
+    // True while there is search text, the list then shows search results
+    public boolean isSearching() {
+        return !NoteSearchQuery.toMatchExpression(searchText.getValue()).isEmpty();
+    }
+
+    private void setSelection(Set<Integer> selected) {
+        selection.setValue(Collections.unmodifiableSet(selected));
+    }
+
+    private void stopLoadingAllIds() {
+        if (loadingAllIds != null) {
+            selection.removeSource(loadingAllIds);
+            loadingAllIds = null;
+        }
+    }
+
+    // Deletes all notes via the repository (doesn't need to be passed a note). Runs in the background a
+    // chunk at a time, the progress is posted to getDeleteAllProgress. If it stops early the chunks already
+    // deleted stay deleted, so the result says how many went.
     public void deleteAllNotes() {
-        repository.deleteAllNotes();
+        deleteAllProgress.setValue(new DeleteAllProgress(0, 0, false, false, null));
+        transferExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // The last progress, what has been committed if the delete stops part way
+                final int[] done = new int[2];
+                boolean interrupted = false;
+                String error = null;
+                try {
+                    done[0] = repository.deleteAllNotes(new NoteRepository.ProgressListener() {
+                        @Override
+                        public void onProgress(int deleted, int total) {
+                            done[0] = deleted;
+                            done[1] = total;
+                            deleteAllProgress.postValue(new DeleteAllProgress(deleted, total, false, false, null));
+                        }
+                    });
+                    done[1] = done[0];
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    interrupted = true;
+                } catch (RuntimeException e) {
+                    error = e.getMessage() == null ? e.toString() : e.getMessage();
+                }
+                deleteAllProgress.postValue(new DeleteAllProgress(done[0], done[1], true, interrupted, error));
+            }
+        });
+    }
+
+    // Returns LiveData of the progress of deleting all notes
+    public LiveData<DeleteAllProgress> getDeleteAllProgress() {
+        return deleteAllProgress;
+    }
+
+    // Clears the finished delete once its result has been shown
+    public void clearDeleteAllProgress() {
+        deleteAllProgress.setValue(null);
+    }
+
+    // Sets the search text. The search only runs once the text has stayed the same for a short time, so
+    // typing a word doesn't run a search per letter.
+    public void setSearchText(String text) {
+        pendingSearchText = text == null ? "" : text;
+        handler.removeCallbacks(applySearch);
+        if (!pendingSearchText.equals(searchText.getValue())) {
+            handler.postDelayed(applySearch, SEARCH_DEBOUNCE_MS);
+        }
+    }
+
+    // Sorts the list by the given column, keeping the priority filter.
+    public void setSort(NoteSort sort) {
+        setListQuery(listQuery.getValue().withSort(sort));
+    }
+
+    // Only lists the notes with a priority from min to max (inclusive), keeping the sort.
+    public void setPriorityRange(int min, int max) {
+        setListQuery(listQuery.getValue().withPriorities(min, max));
     }
 
-    // Returns LiveData
-    public LiveData<List<Note>> getAllNotes() {
-        return allNotes;
+    // Returns the current sort and filter of the list
+    public NoteListQuery getListQuery() {
+        return listQuery.getValue();
+    }
+
+    // Only rebuilds the list when the query actually changes, picking the current sort again does nothing
+    private void setListQuery(NoteListQuery query) {
+        if (!query.equals(listQuery.getValue())) {
+            listQuery.setValue(query);
+        }
+    }
+
+    // Imports the notes from the JSON or CSV file in the background.
+    public void importNotes(final Uri uri) {
+        final NoteTransfer transfer = startTransfer(true);
+        transferExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int count = 0;
+                String error = null;
+                try (InputStream in = getApplication().getContentResolver().openInputStream(uri)) {
+                    if (in == null) {
+                        throw new IOException("Can't open " + uri);
+                    }
+                    count = transfer.importNotes(in, progressListener(transfer, true));
+                } catch (NoteTransfer.ImportException e) {
+                    // The notes read before the failure were saved, so they are counted
+                    count = e.notes;
+                    error = e.getMessage();
+                } catch (IOException | InterruptedException | RuntimeException e) {
+                    error = e.getMessage() == null ? e.toString() : e.getMessage();
+                }
+                transferProgress.postValue(new NoteTransfer.Progress(true, count, true, transfer.isCancelled(), error));
+            }
+        });
+    }
+
+    // Exports every note to the file in the background.
+    public void exportNotes(final Uri uri, final NoteTransfer.Format format) {
+        final NoteTransfer transfer = startTransfer(false);
+        transferExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int count = 0;
+                String error = null;
+                try (OutputStream out = getApplication().getContentResolver().openOutputStream(uri)) {
+                    if (out == null) {
+                        throw new IOException("Can't open " + uri);
+                    }
+                    count = transfer.exportNotes(out, format, progressListener(transfer, false));
+                } catch (IOException | RuntimeException e) {
+                    error = e.getMessage() == null ? e.toString() : e.getMessage();
+                }
+                transferProgress.postValue(new NoteTransfer.Progress(false, count, true, transfer.isCancelled(), error));
+            }
+        });
+    }
+
+    // Cancels the import or export that is running, if there is one.
+    public void cancelTransfer() {
+        NoteTransfer transfer = currentTransfer;
+        if (transfer != null) {
+            transfer.cancel();
+        }
+    }
+
+    // Returns LiveData of the progress of the latest import or export
+    public LiveData<NoteTransfer.Progress> getTransferProgress() {
+        return transferProgress;
+    }
+
+    // Clears the finished transfer once its result has been shown
+    public void clearTransferProgress() {
+        transferProgress.setValue(null);
+    }
+
+    // Creates a transfer and reports that it has started
+    private NoteTransfer startTransfer(boolean importing) {
+        NoteTransfer transfer = repository.newTransfer();
+        currentTransfer = transfer;
+        transferProgress.setValue(new NoteTransfer.Progress(importing, 0, false, false, null));
+        return transfer;
+    }
+
+    // Posts the progress of a transfer as each chunk is done
+    private NoteTransfer.Listener progressListener(final NoteTransfer transfer, final boolean importing) {
+        return new NoteTransfer.Listener() {
+            @Override
+            public void onProgress(int notes) {
+                transferProgress.postValue(new NoteTransfer.Progress(importing, notes, false, transfer.isCancelled(), null));
+            }
+        };
+    }
+
+    // Returns what measures the text of the list rows in the background, handed to the list adapter
+    public NoteTextLayout getTextLayout() {
+        return repository.getTextLayout();
+    }
+
+    // Returns the database metrics as text, and saves them as JSON to note_metrics.json in the app's files
+    // directory (pull it with "adb shell run-as com.example.architecturecomponents cat files/note_metrics.json").
+    public String dumpMetrics() {
+        repository.saveMetrics(new File(getApplication().getFilesDir(), "note_metrics.json"));
+        return repository.getMetricsReport();
+    }
+
+    // Returns LiveData of the number of notes, shown above the list
+    public LiveData<Integer> getNoteCount() {
+        if (noteCount == null) {
+            noteCount = repository.getNoteCount();
+        }
+        return noteCount;
+    }
+
+    // Returns LiveData of the list notes edited where they are, whose rows need binding again
+    public LiveData<List<NoteSummary>> getPatchedNotes() {
+        return repository.getPatchedNotes();
+    }
+
+    // Returns LiveData of the paged note summaries, either the sorted and filtered list or the current
+    // search results
+    public LiveData<PagedList<NoteSummary>> getNotes() {
+        return notes;
+    }
+
+    // True if there is a sync server to sync with
+    public boolean canSync() {
+        return !BuildConfig.SYNC_URL.isEmpty();
+    }
+
+    // Syncs the notes with the server in the background, after any import, export or delete all already
+    // queued. The result is posted to getSyncResult.
+    public void syncNotes() {
+        transferExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                String result;
+                try {
+                    NoteSync.Result synced = repository.newSync(new URL(BuildConfig.SYNC_URL)).sync();
+                    result = "Synced: " + synced.pushed + " sent, " + synced.pulled + " received";
+                    if (synced.conflicts > 0) {
+                        result += ", " + synced.conflicts + " replaced by newer changes";
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // A response the client can't read, or a note the writer can't store, fails the sync
+                    // rather than the app
+                    result = "Sync failed: " + (e.getMessage() == null ? e.toString() : e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                syncResult.postValue(result);
+            }
+        });
+    }
+
+    // Returns LiveData of what the latest sync did
+    public LiveData<String> getSyncResult() {
+        return syncResult;
+    }
+
+    // Clears the sync result once it has been shown
+    public void clearSyncResult() {
+        syncResult.setValue(null);
+    }
+
+    // Stops any waiting search once the view model is no longer used
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        handler.removeCallbacks(applySearch);
+        cancelTransfer();
+        transferExecutor.shutdown();
+    }
+
+    // Where deleting all notes has got to, shown to the user by MainActivity
+    public static class DeleteAllProgress {
+        // Notes deleted so far, out of the number there were when it started
+        public final int deleted;
+        public final int total;
+        // Set once the delete has stopped, along with whether it was stopped early or failed. Only when it
+        // finished with neither is every note gone.
+        public final boolean finished;
+        public final boolean cancelled;
+        public final String error;
+
+        public DeleteAllProgress(int deleted, int total, boolean finished, boolean cancelled, String error) {
+            this.deleted = deleted;
+            this.total = total;
+            this.finished = finished;
+            this.cancelled = cancelled;
+            this.error = error;
+        }
     }
 }
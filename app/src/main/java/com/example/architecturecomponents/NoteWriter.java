@@ -0,0 +1,749 @@
+package com.example.architecturecomponents;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+// Single writer for the note table. Writes are queued and applied by one background thread, which takes
+// everything waiting in the queue (up to a row limit) and applies it in one transaction. Runs of the same
+// kind of write use the bulk DAO methods, so a burst of writes costs one transaction (and one sync to disk)
+// rather than one each. The queue is bounded: once it is full, whoever is adding writes waits until the
+// writer catches up, which stops a large import from running ahead of the database.
+// Once a transaction is committed the writer tells its listeners which rows it changed (see NoteChange).
+// Every write to the note table goes through here, so the listeners see every change. Each note written is
+// also logged in note_changelog in the same transaction, for NoteSync to push, apart from the writes a
+// sync makes itself.
+public class NoteWriter {
+    private static final String TAG = "NoteWriter";
+    // Name the batch transactions are recorded under in NoteMetrics
+    private static final String METRIC_BATCH = "NoteWriter.batch";
+
+    // Kinds of write that can be queued
+    private static final int INSERT = 0;
+    private static final int UPDATE = 1;
+    private static final int DELETE = 2;
+    private static final int RESTORE = 3;
+    private static final int PURGE = 4;
+    private static final int DELETE_ALL = 5;
+    private static final int VACUUM = 6;
+    private static final int BARRIER = 7;
+    private static final int SET_PRIORITY = 8;
+    private static final int SYNC = 9;
+
+    // Fields of a note an update writes, so an edit of one field doesn't rewrite the others
+    public static final int FIELD_TITLE = 1;
+    public static final int FIELD_DESCRIPTION = 2;
+    public static final int FIELD_PRIORITY = 4;
+    public static final int ALL_FIELDS = FIELD_TITLE | FIELD_DESCRIPTION | FIELD_PRIORITY;
+
+    // Declare the database, the DAO, the queue of writes and the most rows written per transaction
+    private final NoteDatabase database;
+    private final NoteDao noteDao;
+    private final BlockingQueue<Write> queue;
+    private final int maxBatchRows;
+
+    // updatedAt given to the latest write, only used by the writer thread
+    private long lastUpdatedAt;
+
+    // Told about the changes of each committed transaction
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Counters for the metrics, updated by the writer thread and read from anywhere
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong rowCount = new AtomicLong();
+    private final AtomicInteger lastBatchRows = new AtomicInteger();
+    private final AtomicInteger maxBatchRowsSeen = new AtomicInteger();
+    private final AtomicLong failedBatchCount = new AtomicLong();
+
+    // Constructor, takes the database, the most writes that can be waiting and the most rows per
+    // transaction, then starts the writer thread.
+    public NoteWriter(NoteDatabase database, int capacity, int maxBatchRows) {
+        this.database = database;
+        this.maxBatchRows = maxBatchRows;
+        noteDao = database.timedNoteDao();
+        queue = new ArrayBlockingQueue<>(capacity);
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        }, TAG);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Queues a note to be inserted. Like the other write methods this waits if the queue is full.
+    public void insert(Note note) {
+        enqueue(new Write(INSERT, Collections.singletonList(note)));
+    }
+
+    // Inserts a note and returns the ID it was given, 0 if the insert failed. Waits for the insert to be
+    // committed, so must not be called on the main thread.
+    public int insertAndGetId(Note note) throws InterruptedException {
+        return await(new Write(INSERT, Collections.singletonList(note)));
+    }
+
+    // Queues a list of notes to be inserted together.
+    public void insertAll(List<Note> notes) {
+        enqueue(new Write(INSERT, notes));
+    }
+
+    // Queues a note to be updated.
+    public void update(Note note) {
+        enqueue(new Write(UPDATE, Collections.singletonList(note)));
+    }
+
+    // Queues an update of only some fields of a note (FIELD_ flags), the other columns are left as they are.
+    // The note should still hold the current value of every field, as it is what listeners are told about.
+    public void updateFields(Note note, int fields) {
+        Write write = new Write(UPDATE, Collections.singletonList(note));
+        write.fields = fields;
+        enqueue(write);
+    }
+
+    // Queues the notes with the given IDs to be marked as deleted. They stay in the table, so the delete
+    // can be undone, until they are purged.
+    public void delete(List<Integer> ids) {
+        enqueue(new Write(DELETE, Collections.<Note>emptyList(), ids));
+    }
+
+    // Queues deleted notes with the given IDs to be brought back.
+    public void restore(List<Integer> ids) {
+        enqueue(new Write(RESTORE, Collections.<Note>emptyList(), ids));
+    }
+
+    // Queues the notes with the given IDs to all be given the priority. However many IDs there are, they
+    // are written in one transaction, like a delete or restore of many notes.
+    public void setPriority(List<Integer> ids, int priority) {
+        Write write = new Write(SET_PRIORITY, Collections.<Note>emptyList(), ids);
+        write.priority = priority;
+        enqueue(write);
+    }
+
+    // Removes up to "limit" notes deleted at or before the cutoff for good, in one transaction, and
+    // returns how many were removed (0 if the purge failed). Waits for the purge to be committed, so must
+    // not be called on the main thread.
+    public int purgeDeleted(long cutoff, int limit) throws InterruptedException {
+        Write purge = new Write(PURGE, Collections.<Note>emptyList());
+        purge.cutoff = cutoff;
+        purge.limit = limit;
+        return await(purge);
+    }
+
+    // Removes up to "limit" notes (deleted or not) for good, in one transaction, and returns how many were
+    // removed. Called over and over to delete every note, so the table is never locked for longer than one
+    // chunk and other writes (and readers, without WAL) get in between chunks. Waits for the chunk to be
+    // committed, so must not be called on the main thread.
+    public int deleteChunk(int limit) throws InterruptedException {
+        Write chunk = new Write(DELETE_ALL, Collections.<Note>emptyList());
+        chunk.limit = limit;
+        return await(chunk);
+    }
+
+    // Gives up to "pages" free pages back to the file system with an incremental vacuum, in one transaction,
+    // and returns the number of free pages left. Waits for the vacuum to be committed, so must not be
+    // called on the main thread.
+    public int vacuum(int pages) throws InterruptedException {
+        Write vacuum = new Write(VACUUM, Collections.<Note>emptyList());
+        vacuum.limit = pages;
+        return await(vacuum);
+    }
+
+    // Applies the result of a sync in one transaction, see NoteSync: removes the changelog up to pushedSeq
+    // (0 to keep it all), sets the server versions of the notes pushed (by guid), and applies the notes
+    // from the server. None of it is logged in note_changelog. Returns the number of notes from the server
+    // that changed a local note, or -1 if the write failed. Waits for the write to be committed, so must
+    // not be called on the main thread.
+    public int applySync(long pushedSeq, Map<String, Integer> versions, List<Note> serverNotes)
+            throws InterruptedException {
+        Write sync = new Write(SYNC, serverNotes);
+        sync.cutoff = pushedSeq;
+        sync.versions = versions;
+        int applied = await(sync);
+        return sync.failed ? -1 : applied;
+    }
+
+    // Waits until every write queued before this call has been committed. Must not be called on the
+    // main thread.
+    public void flush() throws InterruptedException {
+        Write barrier = new Write(BARRIER, Collections.<Note>emptyList());
+        enqueue(barrier);
+        barrier.done.await();
+    }
+
+    // Adds a listener for committed changes. It is called on the writer thread, so it must be quick and
+    // must not wait for writes.
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Returns a snapshot of the writer metrics.
+    public Stats getStats() {
+        return new Stats(queue.size(), maxQueueDepth.get(), batchCount.get(), rowCount.get(),
+                lastBatchRows.get(), maxBatchRowsSeen.get(), failedBatchCount.get());
+    }
+
+    // Queues a write that returns a result, and waits for it to be committed.
+    private int await(Write write) throws InterruptedException {
+        enqueue(write);
+        write.done.await();
+        return write.result;
+    }
+
+    // Adds a write to the queue, waiting for space if it is full.
+    private void enqueue(Write write) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(write);
+                break;
+            } catch (InterruptedException e) {
+                // Keep trying, the write must not be lost. The interrupt is restored afterwards.
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        updateMax(maxQueueDepth, queue.size());
+    }
+
+    // Loop run by the writer thread, takes a batch from the queue and applies it.
+    private void runWriter() {
+        List<Write> batch = new ArrayList<>();
+        while (true) {
+            try {
+                // Wait for the first write, then take whatever else is waiting up to the row limit.
+                Write first = queue.take();
+                batch.add(first);
+                int rows = first.rows();
+                Write next;
+                while (rows < maxBatchRows && (next = queue.poll()) != null) {
+                    batch.add(next);
+                    rows += next.rows();
+                }
+                applyBatch(batch, rows);
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Writer interrupted, stopping", e);
+                return;
+            } finally {
+                // Release anyone waiting on a flush, even if the batch failed.
+                for (Write write : batch) {
+                    write.done.countDown();
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    // Applies a batch of writes in one transaction. If that fails, the writes are retried one at a time
+    // so that a single bad write doesn't lose the rest of the batch.
+    // The whole transaction, commit included, is timed in NoteMetrics as "NoteWriter.batch".
+    private void applyBatch(final List<Write> batch, int rows) {
+        long start = System.nanoTime();
+        final List<NoteChange> changes = new ArrayList<>();
+        try {
+            database.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    applyWrites(batch, changes);
+                }
+            });
+            NoteMetrics.getInstance().record(METRIC_BATCH, System.nanoTime() - start, rows);
+            notifyChanges(changes);
+        } catch (RuntimeException e) {
+            NoteMetrics.getInstance().recordError(METRIC_BATCH, System.nanoTime() - start);
+            failedBatchCount.incrementAndGet();
+            Log.e(TAG, "Batch of " + batch.size() + " writes failed, retrying one at a time", e);
+            for (final Write write : batch) {
+                // The failed transaction was rolled back, so nothing it removed was removed
+                write.result = 0;
+                final List<NoteChange> writeChanges = new ArrayList<>();
+                try {
+                    database.runInTransaction(new Runnable() {
+                        @Override
+                        public void run() {
+                            applyWrites(Collections.singletonList(write), writeChanges);
+                        }
+                    });
+                    notifyChanges(writeChanges);
+                } catch (RuntimeException retryError) {
+                    write.failed = true;
+                    Log.e(TAG, "Dropping failed write", retryError);
+                }
+            }
+        }
+        batchCount.incrementAndGet();
+        rowCount.addAndGet(rows);
+        lastBatchRows.set(rows);
+        updateMax(maxBatchRowsSeen, rows);
+    }
+
+    // Tells the listeners about the changes of a committed transaction
+    private void notifyChanges(List<NoteChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        List<NoteChange> committed = Collections.unmodifiableList(changes);
+        for (ChangeListener listener : listeners) {
+            try {
+                listener.onChanges(committed);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Change listener failed", e);
+            }
+        }
+    }
+
+    // Applies the writes in order, joining runs of the same kind into one bulk DAO call. What each run
+    // changed is added to the changes, to be reported if the transaction commits.
+    private void applyWrites(List<Write> writes, List<NoteChange> changes) {
+        int i = 0;
+        while (i < writes.size()) {
+            int type = writes.get(i).type;
+            // Writes with a result each have their own limit, so they are never joined
+            if (type == PURGE || type == DELETE_ALL || type == VACUUM) {
+                Write write = writes.get(i);
+                write.result = applyLimited(write);
+                if (write.result > 0 && type != VACUUM) {
+                    changes.add(new NoteChange(type == PURGE ? NoteChange.PURGED : NoteChange.REMOVED,
+                            Collections.<Note>emptyList(), Collections.<Integer>emptyList()));
+                }
+                i++;
+                continue;
+            }
+            // Each priority change has its own priority, so they aren't joined either
+            if (type == SET_PRIORITY) {
+                Write write = writes.get(i);
+                long updatedAt = nextUpdatedAt();
+                for (List<Integer> chunk : chunks(write.ids)) {
+                    noteDao.setPriority(chunk, write.priority, updatedAt);
+                }
+                logChanges(write.ids);
+                changes.add(new NoteChange(NoteChange.PRIORITY_SET, write.notes, write.ids));
+                i++;
+                continue;
+            }
+            if (type == SYNC) {
+                Write write = writes.get(i);
+                write.result = applySync(write, changes);
+                i++;
+                continue;
+            }
+            List<Note> notes = new ArrayList<>();
+            List<Integer> ids = new ArrayList<>();
+            List<Integer> fields = new ArrayList<>();
+            int runStart = i;
+            while (i < writes.size() && writes.get(i).type == type) {
+                Write write = writes.get(i);
+                notes.addAll(write.notes);
+                ids.addAll(write.ids);
+                for (int n = 0; n < write.notes.size(); n++) {
+                    fields.add(write.fields);
+                }
+                i++;
+            }
+            // Every inserted or updated row gets a new updatedAt, the list uses it to spot changed rows. New
+            // notes are created at the same time, unless they already say when (an import may).
+            for (Note note : notes) {
+                note.setUpdatedAt(nextUpdatedAt());
+                if (type == INSERT && note.getCreatedAt() == 0) {
+                    note.setCreatedAt(note.getUpdatedAt());
+                }
+                if (type == INSERT && note.getGuid() == null) {
+                    note.setGuid(UUID.randomUUID().toString());
+                }
+            }
+            switch (type) {
+                case INSERT:
+                    List<Integer> inserted = insertNotes(notes);
+                    logChanges(inserted);
+                    changes.add(new NoteChange(NoteChange.INSERTED, notes, inserted));
+                    // Each insert's result is the ID of its first note
+                    int first = 0;
+                    for (int w = runStart; w < i; w++) {
+                        Write write = writes.get(w);
+                        write.result = write.notes.isEmpty() ? 0 : inserted.get(first);
+                        first += write.notes.size();
+                    }
+                    break;
+                case UPDATE:
+                    updateNotes(notes, fields);
+                    logChanges(idsOf(notes));
+                    changes.add(new NoteChange(NoteChange.UPDATED, notes, idsOf(notes)));
+                    break;
+                case DELETE:
+                    long deletedAt = System.currentTimeMillis();
+                    for (List<Integer> chunk : chunks(ids)) {
+                        noteDao.markNotesDeleted(chunk, deletedAt);
+                    }
+                    logChanges(ids);
+                    changes.add(new NoteChange(NoteChange.DELETED, notes, ids));
+                    break;
+                case RESTORE:
+                    for (List<Integer> chunk : chunks(ids)) {
+                        noteDao.restoreNotes(chunk);
+                    }
+                    logChanges(ids);
+                    changes.add(new NoteChange(NoteChange.RESTORED, notes, ids));
+                    break;
+                default:
+                    // Barriers don't write anything
+                    break;
+            }
+        }
+    }
+
+    // Inserts the notes, long descriptions are cut down in note_table and stored whole in note_body (and the
+    // search index). The notes passed in are left with their full descriptions. Returns the IDs given to the
+    // notes.
+    private List<Integer> insertNotes(List<Note> notes) {
+        List<Note> stored = new ArrayList<>(notes.size());
+        for (Note note : notes) {
+            stored.add(NoteBodies.toStored(note));
+        }
+        long[] ids = noteDao.insertNotes(stored);
+        List<NoteBody> bodies = new ArrayList<>();
+        for (int i = 0; i < notes.size(); i++) {
+            String description = notes.get(i).getDescription();
+            if (NoteBodies.isLarge(description)) {
+                bodies.add(new NoteBody((int) ids[i], NoteBodies.compress(description)));
+                noteDao.indexDescription((int) ids[i], description);
+            }
+        }
+        if (!bodies.isEmpty()) {
+            noteDao.insertBodies(bodies);
+        }
+        List<Integer> inserted = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            inserted.add((int) id);
+        }
+        return inserted;
+    }
+
+    // Updates the notes, one statement per note (Room reuses the compiled statement for each). A note with
+    // every field to write is written whole, otherwise each field written has its own statement, so changing
+    // the priority or the title never rewrites a long description. A note whose description is written
+    // and is now long gets its body stored or replaced and its full text indexed, one that is now short has
+    // any old body removed.
+    private void updateNotes(List<Note> notes, List<Integer> fields) {
+        List<NoteBody> bodies = new ArrayList<>();
+        List<Integer> shortIds = new ArrayList<>();
+        for (int i = 0; i < notes.size(); i++) {
+            Note note = notes.get(i);
+            int noteFields = fields.get(i);
+            String description = note.getDescription();
+            if (noteFields == ALL_FIELDS) {
+                noteDao.updateNote(note.getId(), note.getTitle(), NoteBodies.inlinePart(description),
+                        note.getPriority(), note.getUpdatedAt(), NoteBodies.bodyLength(description));
+            } else {
+                if ((noteFields & FIELD_TITLE) != 0) {
+                    noteDao.updateTitle(note.getId(), note.getTitle(), note.getUpdatedAt());
+                }
+                if ((noteFields & FIELD_PRIORITY) != 0) {
+                    noteDao.updatePriority(note.getId(), note.getPriority(), note.getUpdatedAt());
+                }
+                if ((noteFields & FIELD_DESCRIPTION) == 0) {
+                    continue;
+                }
+                noteDao.updateDescription(note.getId(), NoteBodies.inlinePart(description),
+                        NoteBodies.bodyLength(description), note.getUpdatedAt());
+            }
+            if (NoteBodies.isLarge(description)) {
+                bodies.add(new NoteBody(note.getId(), NoteBodies.compress(description)));
+                noteDao.indexDescription(note.getId(), description);
+            } else {
+                shortIds.add(note.getId());
+            }
+        }
+        if (!bodies.isEmpty()) {
+            noteDao.insertBodies(bodies);
+        }
+        for (List<Integer> chunk : chunks(shortIds)) {
+            noteDao.deleteBodies(chunk);
+        }
+    }
+
+    // Applies the notes from the sync server, skipping any that have local changes still to push (the server
+    // decides on those when they are pushed) and any the local copy is already as new as. A note is new
+    // here if the server version is higher than the one the local copy is based on. Notes from the server
+    // get a local updatedAt like any other write, so the list spots them as changed. Returns how many local
+    // notes were changed. Every note given a new version, pushed or pulled, is reported as VERSIONED too.
+    private int applySync(Write write, List<NoteChange> changes) {
+        if (write.cutoff > 0) {
+            noteDao.deleteChangelog(write.cutoff);
+        }
+        for (Map.Entry<String, Integer> version : write.versions.entrySet()) {
+            noteDao.setVersion(version.getKey(), version.getValue());
+        }
+        if (!write.versions.isEmpty()) {
+            List<Integer> pushed = new ArrayList<>();
+            for (List<String> chunk : chunks(new ArrayList<>(write.versions.keySet()))) {
+                pushed.addAll(noteDao.getIdsByGuids(chunk));
+            }
+            changes.add(new NoteChange(NoteChange.VERSIONED, Collections.<Note>emptyList(), pushed));
+        }
+        if (write.notes.isEmpty()) {
+            return 0;
+        }
+        List<String> guids = new ArrayList<>(write.notes.size());
+        for (Note note : write.notes) {
+            guids.add(note.getGuid());
+        }
+        Map<String, Note> local = new HashMap<>();
+        Set<String> pending = new HashSet<>();
+        for (List<String> chunk : chunks(guids)) {
+            for (Note note : noteDao.getNotesByGuids(chunk)) {
+                local.put(note.getGuid(), note);
+            }
+            pending.addAll(noteDao.getChangedGuids(chunk));
+        }
+
+        List<Note> inserts = new ArrayList<>();
+        List<Note> updates = new ArrayList<>();
+        List<Integer> deleted = new ArrayList<>();
+        List<Integer> restored = new ArrayList<>();
+        List<Integer> versioned = new ArrayList<>();
+        for (Note note : write.notes) {
+            Note existing = local.get(note.getGuid());
+            if (pending.contains(note.getGuid()) || (existing != null && existing.getVersion() >= note.getVersion())) {
+                continue;
+            }
+            if (existing == null) {
+                // Notes deleted on the server before they got here have nothing to delete
+                if (note.getDeletedAt() == 0) {
+                    note.setUpdatedAt(nextUpdatedAt());
+                    if (note.getCreatedAt() == 0) {
+                        note.setCreatedAt(note.getUpdatedAt());
+                    }
+                    inserts.add(note);
+                }
+                continue;
+            }
+            note.setId(existing.getId());
+            if (note.getDeletedAt() > 0) {
+                if (existing.getDeletedAt() == 0) {
+                    deleted.add(note.getId());
+                }
+            } else {
+                note.setUpdatedAt(nextUpdatedAt());
+                updates.add(note);
+                if (existing.getDeletedAt() > 0) {
+                    restored.add(note.getId());
+                }
+            }
+            noteDao.setVersion(note.getGuid(), note.getVersion());
+            versioned.add(note.getId());
+        }
+
+        if (!inserts.isEmpty()) {
+            changes.add(new NoteChange(NoteChange.INSERTED, inserts, insertNotes(inserts)));
+        }
+        if (!updates.isEmpty()) {
+            updateNotes(updates, Collections.nCopies(updates.size(), ALL_FIELDS));
+            changes.add(new NoteChange(NoteChange.UPDATED, updates, idsOf(updates)));
+        }
+        if (!restored.isEmpty()) {
+            for (List<Integer> chunk : chunks(restored)) {
+                noteDao.restoreNotes(chunk);
+            }
+            changes.add(new NoteChange(NoteChange.RESTORED, Collections.<Note>emptyList(), restored));
+        }
+        if (!deleted.isEmpty()) {
+            long deletedAt = System.currentTimeMillis();
+            for (List<Integer> chunk : chunks(deleted)) {
+                noteDao.markNotesDeleted(chunk, deletedAt);
+            }
+            changes.add(new NoteChange(NoteChange.DELETED, Collections.<Note>emptyList(), deleted));
+        }
+        // Last, so the notes updated above are taken out of the cache rather than left at their old version
+        if (!versioned.isEmpty()) {
+            changes.add(new NoteChange(NoteChange.VERSIONED, Collections.<Note>emptyList(), versioned));
+        }
+        return inserts.size() + updates.size() + deleted.size();
+    }
+
+    // Logs the notes with the given IDs in note_changelog, to be pushed by the next sync
+    private void logChanges(List<Integer> ids) {
+        for (List<Integer> chunk : chunks(ids)) {
+            logGuids(noteDao.getGuids(chunk));
+        }
+    }
+
+    private void logGuids(List<String> guids) {
+        List<NoteChangelogEntry> entries = new ArrayList<>(guids.size());
+        for (String guid : guids) {
+            // Only a note written before it had a guid could have none, there is nothing to sync it by
+            if (guid != null) {
+                entries.add(new NoteChangelogEntry(0, guid));
+            }
+        }
+        if (!entries.isEmpty()) {
+            noteDao.insertChangelog(entries);
+        }
+    }
+
+    // Applies a purge, delete chunk or vacuum, returning its result.
+    private int applyLimited(Write write) {
+        switch (write.type) {
+            case PURGE:
+                return noteDao.purgeDeletedNotes(write.cutoff, write.limit);
+            case DELETE_ALL:
+                logGuids(noteDao.getFirstGuids(write.limit));
+                return noteDao.deleteNotes(write.limit);
+            default:
+                // The incremental_vacuum pragma frees a page per step, so the cursor is read to the end
+                // to run it fully. It returns no rows.
+                SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+                try (Cursor cursor = db.query("PRAGMA incremental_vacuum(" + write.limit + ")")) {
+                    while (cursor.moveToNext()) {
+                        // Nothing to read
+                    }
+                }
+                try (Cursor cursor = db.query("PRAGMA freelist_count")) {
+                    return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+                }
+        }
+    }
+
+    // Returns the current time, or one more than the last value if the clock hasn't moved on (or has gone
+    // back), so no two writes ever get the same updatedAt.
+    private long nextUpdatedAt() {
+        lastUpdatedAt = Math.max(System.currentTimeMillis(), lastUpdatedAt + 1);
+        return lastUpdatedAt;
+    }
+
+    // Splits a list of IDs into chunks small enough for one "IN (:ids)" query, see NoteDao.MAX_IDS_PER_QUERY.
+    // All the chunks are written in the same transaction, so a write of many IDs is still one commit.
+    private static <T> List<List<T>> chunks(List<T> ids) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int start = 0; start < ids.size(); start += NoteDao.MAX_IDS_PER_QUERY) {
+            chunks.add(ids.subList(start, Math.min(ids.size(), start + NoteDao.MAX_IDS_PER_QUERY)));
+        }
+        return chunks;
+    }
+
+    private static List<Integer> idsOf(List<Note> notes) {
+        List<Integer> ids = new ArrayList<>(notes.size());
+        for (Note note : notes) {
+            ids.add(note.getId());
+        }
+        return ids;
+    }
+
+    // Raises the counter to the value if it is higher.
+    private static void updateMax(AtomicInteger max, int value) {
+        int current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    // Told about the changes of each committed transaction, on the writer thread
+    public interface ChangeListener {
+        void onChanges(List<NoteChange> changes);
+    }
+
+    // A single queued write of notes or note IDs, along with a latch released once it has been applied.
+    private static class Write {
+        private final int type;
+        private final List<Note> notes;
+        private final List<Integer> ids;
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        // For a purge, delete chunk or vacuum: the cutoff, the most notes (or pages) to remove, and the
+        // result (set before the latch is released). An insert's result is the ID of its first note.
+        private long cutoff;
+        private int limit;
+        private int result;
+
+        // For an update, the fields written (FIELD_ flags)
+        private int fields = ALL_FIELDS;
+
+        // For a priority change, the priority the notes are given
+        private int priority;
+
+        // For a sync, the server versions of the notes pushed by guid. The changelog is removed up to the
+        // cutoff.
+        private Map<String, Integer> versions = Collections.emptyMap();
+
+        // Set if the write failed on its own as well as in its batch, and was dropped
+        private boolean failed;
+
+        private Write(int type, List<Note> notes) {
+            this(type, notes, Collections.<Integer>emptyList());
+        }
+
+        private Write(int type, List<Note> notes, List<Integer> ids) {
+            this.type = type;
+            this.notes = notes;
+            this.ids = ids;
+        }
+
+        // Number of rows the write touches, used to size batches
+        private int rows() {
+            return notes.size() + ids.size() + limit + versions.size();
+        }
+    }
+
+    // Snapshot of the writer metrics.
+    public static class Stats {
+        // Writes waiting right now, and the most that have been waiting at once
+        public final int queueDepth;
+        public final int maxQueueDepth;
+        // Transactions committed and rows written in total
+        public final long batches;
+        public final long rows;
+        // Rows written by the latest transaction, and the most written by one transaction
+        public final int lastBatchRows;
+        public final int maxBatchRows;
+        // Transactions that failed and had to be retried write by write
+        public final long failedBatches;
+
+        private Stats(int queueDepth, int maxQueueDepth, long batches, long rows, int lastBatchRows,
+                      int maxBatchRows, long failedBatches) {
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.batches = batches;
+            this.rows = rows;
+            this.lastBatchRows = lastBatchRows;
+            this.maxBatchRows = maxBatchRows;
+            this.failedBatches = failedBatches;
+        }
+
+        // Average rows written per transaction
+        public double getAverageBatchRows() {
+            return batches == 0 ? 0 : (double) rows / batches;
+        }
+
+        @Override
+        public String toString() {
+            return "queueDepth=" + queueDepth + " maxQueueDepth=" + maxQueueDepth + " batches=" + batches
+                    + " rows=" + rows + " lastBatchRows=" + lastBatchRows + " maxBatchRows=" + maxBatchRows
+                    + " failedBatches=" + failedBatches;
+        }
+    }
+}
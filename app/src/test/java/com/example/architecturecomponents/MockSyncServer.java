@@ -0,0 +1,208 @@
+package com.example.architecturecomponents;
+
+import android.util.JsonReader;
+import android.util.JsonWriter;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stand-in for the sync server, speaking the protocol described in {@link NoteSyncClient} on a local port.
+ * Keeps the latest copy of every note by guid, with its version and the sequence number of the change
+ * that made it, which is the pull cursor. {@link #edit} changes a note as if another device had synced.
+ */
+class MockSyncServer {
+    private final HttpServer server;
+
+    // Latest copy of each note, and the change sequence number it was stored at
+    private final Map<String, Note> notes = new HashMap<>();
+    private final Map<String, Long> changedAt = new HashMap<>();
+    private long seq;
+
+    // Requests handled so far
+    private int requests;
+
+    MockSyncServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/push", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                push(exchange);
+            }
+        });
+        server.createContext("/changes", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                changes(exchange);
+            }
+        });
+        server.start();
+    }
+
+    URL getUrl() throws IOException {
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+    }
+
+    void stop() {
+        server.stop(0);
+    }
+
+    synchronized int getRequests() {
+        return requests;
+    }
+
+    synchronized Note get(String guid) {
+        return notes.get(guid);
+    }
+
+    // Changes the note's title on the server, giving it the next version
+    synchronized void edit(String guid, String title) {
+        Note note = notes.get(guid);
+        Note edited = new Note(title, note.getDescription(), note.getPriority());
+        edited.setCreatedAt(note.getCreatedAt());
+        edited.setUpdatedAt(System.currentTimeMillis());
+        store(guid, edited, note.getVersion() + 1);
+    }
+
+    // Changes the note's priority on the server, with no check on its range, giving it the next version
+    synchronized void editPriority(String guid, int priority) {
+        Note note = notes.get(guid);
+        Note edited = new Note(note.getTitle(), note.getDescription(), priority);
+        edited.setCreatedAt(note.getCreatedAt());
+        edited.setUpdatedAt(System.currentTimeMillis());
+        store(guid, edited, note.getVersion() + 1);
+    }
+
+    private synchronized void push(HttpExchange exchange) throws IOException {
+        requests++;
+        List<Note> pushed = Collections.emptyList();
+        InputStream in = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            in = new GZIPInputStream(in);
+        }
+        JsonReader request = new JsonReader(new BufferedReader(new InputStreamReader(in, "UTF-8")));
+        request.beginObject();
+        while (request.hasNext()) {
+            if (NoteSyncClient.NOTES.equals(request.nextName())) {
+                pushed = NoteSyncClient.readNotes(request);
+            } else {
+                request.skipValue();
+            }
+        }
+        request.endObject();
+
+        // Taken if it was edited from the latest version, otherwise the latest version is sent back
+        Map<String, Integer> accepted = new HashMap<>();
+        List<Note> conflicts = new ArrayList<>();
+        for (Note note : pushed) {
+            Note current = notes.get(note.getGuid());
+            int version = current == null ? 0 : current.getVersion();
+            if (note.getVersion() == NoteSyncClient.ANY_VERSION || note.getVersion() == version) {
+                store(note.getGuid(), note, version + 1);
+                accepted.put(note.getGuid(), version + 1);
+            } else {
+                conflicts.add(current);
+            }
+        }
+
+        JsonWriter response = startResponse(exchange);
+        response.beginObject();
+        response.name(NoteSyncClient.ACCEPTED).beginArray();
+        for (Map.Entry<String, Integer> entry : accepted.entrySet()) {
+            response.beginObject();
+            response.name(NoteSyncClient.GUID).value(entry.getKey());
+            response.name(NoteSyncClient.VERSION).value(entry.getValue());
+            response.endObject();
+        }
+        response.endArray();
+        response.name(NoteSyncClient.CONFLICTS);
+        NoteSyncClient.writeNotes(response, conflicts);
+        response.endObject();
+        response.close();
+    }
+
+    private synchronized void changes(HttpExchange exchange) throws IOException {
+        requests++;
+        long since = 0;
+        int limit = Integer.MAX_VALUE;
+        for (String param : exchange.getRequestURI().getQuery().split("&")) {
+            String[] pair = param.split("=");
+            if ("since".equals(pair[0])) {
+                since = Long.parseLong(pair[1]);
+            } else if ("limit".equals(pair[0])) {
+                limit = Integer.parseInt(pair[1]);
+            }
+        }
+        // Every change after the cursor, oldest first
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : changedAt.entrySet()) {
+            if (entry.getValue() > since) {
+                changed.add(entry.getKey());
+            }
+        }
+        Collections.sort(changed, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return Long.compare(changedAt.get(a), changedAt.get(b));
+            }
+        });
+        boolean more = changed.size() > limit;
+        List<Note> page = new ArrayList<>();
+        long cursor = since;
+        for (String guid : changed.subList(0, Math.min(limit, changed.size()))) {
+            page.add(notes.get(guid));
+            cursor = changedAt.get(guid);
+        }
+
+        JsonWriter response = startResponse(exchange);
+        response.beginObject();
+        response.name(NoteSyncClient.NOTES);
+        NoteSyncClient.writeNotes(response, page);
+        response.name(NoteSyncClient.CURSOR).value(cursor);
+        response.name(NoteSyncClient.MORE).value(more);
+        response.endObject();
+        response.close();
+    }
+
+    private void store(String guid, Note note, int version) {
+        note.setGuid(guid);
+        note.setVersion(version);
+        notes.put(guid, note);
+        changedAt.put(guid, ++seq);
+    }
+
+    // Sends the headers of a successful response, compressed if the client asked for it
+    private static JsonWriter startResponse(HttpExchange exchange) throws IOException {
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (gzip) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        if (gzip) {
+            out = new GZIPOutputStream(out);
+        }
+        return new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")));
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.architecturecomponents;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for how {@link NoteBodies} splits and compresses long descriptions.
+ */
+public class NoteBodiesTest {
+    private static String repeat(String text, int times) {
+        StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            repeated.append(text);
+        }
+        return repeated.toString();
+    }
+
+    @Test
+    public void compress_roundTripsTextAndShrinksRepetition() {
+        String description = repeat("Milk, eggs and bread \u00e9\u20ac\ud83d\ude00\n", 500);
+        byte[] data = NoteBodies.compress(description);
+        assertTrue(data.length < description.length() / 10);
+        assertEquals(description, NoteBodies.decompress(data));
+    }
+
+    @Test
+    public void compress_roundTripsEmptyText() {
+        assertEquals("", NoteBodies.decompress(NoteBodies.compress("")));
+    }
+
+    @Test
+    public void inlinePart_keepsShortDescriptionsWhole() {
+        String description = repeat("a", NoteBodies.LARGE_LENGTH);
+        assertFalse(NoteBodies.isLarge(description));
+        assertSame(description, NoteBodies.inlinePart(description));
+        assertEquals(0, NoteBodies.bodyLength(description));
+        assertNull(NoteBodies.inlinePart(null));
+    }
+
+    @Test
+    public void inlinePart_cutsLongDescriptionsWithoutSplittingASurrogatePair() {
+        String description = repeat("a", NoteBodies.INLINE_LENGTH - 1) + "\ud83d\ude00" + repeat("b", NoteBodies.LARGE_LENGTH);
+        assertTrue(NoteBodies.isLarge(description));
+        assertEquals(NoteBodies.INLINE_LENGTH - 1, NoteBodies.inlinePart(description).length());
+        assertEquals(description.length(), NoteBodies.bodyLength(description));
+    }
+
+    @Test
+    public void toStored_copiesLongNotesOnly() {
+        Note small = new Note("t", "short", 1);
+        assertSame(small, NoteBodies.toStored(small));
+
+        String description = repeat("x", NoteBodies.LARGE_LENGTH + 1);
+        Note large = new Note("t", description, 2);
+        large.setId(5);
+        large.setCreatedAt(3);
+        Note stored = NoteBodies.toStored(large);
+        assertEquals(NoteBodies.INLINE_LENGTH, stored.getDescription().length());
+        assertEquals(description.length(), stored.getBodyLength());
+        assertEquals(5, stored.getId());
+        assertEquals(3, stored.getCreatedAt());
+        // The note handed to the writer keeps its full text, it's also what the cache holds
+        assertEquals(description, large.getDescription());
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.architecturecomponents;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the limits, eviction order and load generations of {@link NoteCache}.
+ */
+public class NoteCacheTest {
+    private static Note note(int id, String description) {
+        Note note = new Note("t", description, 1);
+        note.setId(id);
+        return note;
+    }
+
+    // Adds the note as if it had just been loaded
+    private static void load(NoteCache cache, Note note) {
+        cache.putIfUnchanged(note, cache.getGeneration());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverNoteLimit() {
+        NoteCache cache = new NoteCache(2, 1000);
+        load(cache, note(1, "a"));
+        load(cache, note(2, "b"));
+        // Using note 1 makes note 2 the least recently used
+        assertNotNull(cache.get(1));
+        load(cache, note(3, "c"));
+
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(3));
+        NoteCache.Stats stats = cache.getStats();
+        assertEquals(2, stats.notes);
+        assertEquals(1, stats.evictions);
+        assertEquals(3, stats.hits);
+        assertEquals(1, stats.misses);
+    }
+
+    @Test
+    public void evictsOverTextLimitAndSkipsNotesTooBig() {
+        // Each note is 2 * (1 + 9) = 20 bytes
+        NoteCache cache = new NoteCache(10, 50);
+        load(cache, note(1, "123456789"));
+        load(cache, note(2, "123456789"));
+        load(cache, note(3, "123456789"));
+        assertNull(cache.get(1));
+        assertEquals(40, cache.getStats().textBytes);
+
+        load(cache, note(4, "this description is far too long for the cache"));
+        assertNull(cache.get(4));
+        assertEquals(2, cache.getStats().notes);
+    }
+
+    @Test
+    public void putIfUnchanged_dropsLoadsStartedBeforeClear() {
+        NoteCache cache = new NoteCache(10, 1000);
+        long generation = cache.getGeneration();
+        cache.clear();
+        cache.putIfUnchanged(note(1, "old"), generation);
+        assertNull(cache.get(1));
+
+        cache.putIfUnchanged(note(1, "new"), cache.getGeneration());
+        assertEquals("new", cache.get(1).getDescription());
+    }
+
+    @Test
+    public void putIfUnchanged_dropsLoadsStartedBeforeAChange() {
+        NoteCache cache = new NoteCache(10, 1000);
+        long generation = cache.getGeneration();
+        // Any note changed while the load ran stops it being cached, the load can't tell which notes it read
+        cache.remove(2);
+        cache.putIfUnchanged(note(1, "old"), generation);
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    public void update_changesTheWrittenFieldsOfACachedNote() {
+        NoteCache cache = new NoteCache(10, 1000);
+        Note loaded = note(1, "a");
+        loaded.setCreatedAt(7);
+        loaded.setGuid("guid");
+        loaded.setVersion(3);
+        load(cache, loaded);
+        load(cache, note(2, "b"));
+
+        Note written = new Note("edited", "b", 5);
+        written.setId(1);
+        cache.update(written);
+        written.setUpdatedAt(99);
+        Note cached = cache.get(1);
+        assertEquals("edited", cached.getTitle());
+        assertEquals(5, cached.getPriority());
+        assertEquals(0, cached.getUpdatedAt());
+        assertEquals(7, cached.getCreatedAt());
+        assertEquals("guid", cached.getGuid());
+        assertEquals(3, cached.getVersion());
+        // The other notes are kept, and a note that isn't cached isn't added
+        assertNotNull(cache.get(2));
+        Note notCached = note(3, "c");
+        cache.update(notCached);
+        assertNull(cache.get(3));
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.architecturecomponents;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the streaming CSV reader and writer in {@link NoteCsv}, and for reading a CSV import.
+ */
+public class NoteCsvTest {
+    @Test
+    public void readRecord_handlesQuotesCommasAndLineBreaks() throws IOException {
+        BufferedReader in = new BufferedReader(new StringReader(
+                "title,description,priority\r\n\"a, b\",\"say \"\"hi\"\"\nline two\",3\nlast,,1"));
+        assertEquals(Arrays.asList("title", "description", "priority"), NoteCsv.readRecord(in));
+        assertEquals(Arrays.asList("a, b", "say \"hi\"\nline two", "3"), NoteCsv.readRecord(in));
+        assertEquals(Arrays.asList("last", "", "1"), NoteCsv.readRecord(in));
+        assertNull(NoteCsv.readRecord(in));
+    }
+
+    @Test
+    public void writeRecord_roundTrips() throws IOException {
+        StringWriter out = new StringWriter();
+        NoteCsv.writeRecord(out, "plain", "with, comma \"quoted\"\r\nand a break", "7");
+        BufferedReader in = new BufferedReader(new StringReader(out.toString()));
+        assertEquals(Arrays.asList("plain", "with, comma \"quoted\"\r\nand a break", "7"), NoteCsv.readRecord(in));
+        assertNull(NoteCsv.readRecord(in));
+    }
+
+    @Test(expected = IOException.class)
+    public void readRecord_failsOnUnclosedQuote() throws IOException {
+        NoteCsv.readRecord(new BufferedReader(new StringReader("\"never closed")));
+    }
+
+    @Test(expected = IOException.class)
+    public void importNotes_failsOnPriorityOutOfRange() throws Exception {
+        // Fails on the first note, before anything is handed to the writer
+        String csv = "title,description,priority\r\nMilk,Buy milk,11\r\n";
+        new NoteTransfer(null, null).importNotes(new ByteArrayInputStream(csv.getBytes("UTF-8")), null);
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.architecturecomponents;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic notes for {@link NoteScalingBenchmark}. The same settings always give the same notes,
+ * so runs on different days or machines insert the same data and their reports can be compared.
+ */
+public class NoteDataset {
+    private static final String[] WORDS = {
+            "shopping", "list", "meeting", "notes", "call", "dentist", "project", "deadline", "ideas",
+            "holiday", "budget", "recipe", "bread", "garden", "birthday", "present", "book", "review",
+            "car", "service", "invoice", "client", "weekly", "plan", "gym", "read", "write", "fix", "bug"
+    };
+
+    // The settings, see the builder
+    private final long seed;
+    private final int minTitleWords;
+    private final int maxTitleWords;
+    private final int minDescriptionWords;
+    private final int maxDescriptionWords;
+    private final double longFraction;
+    private final double prioritySkew;
+
+    // Chance of each priority being picked, summed up from priority 1 to 10
+    private final double[] priorityCumulative;
+
+    private final Random random;
+
+    private NoteDataset(Builder builder) {
+        seed = builder.seed;
+        minTitleWords = builder.minTitleWords;
+        maxTitleWords = builder.maxTitleWords;
+        minDescriptionWords = builder.minDescriptionWords;
+        maxDescriptionWords = builder.maxDescriptionWords;
+        longFraction = builder.longFraction;
+        prioritySkew = builder.prioritySkew;
+        random = new Random(seed);
+
+        // Priority p is picked with a weight of 1 / p^skew, so a skew of 0 is uniform and higher skews make
+        // low priorities more common, the way most notes are left at the default
+        int priorities = NoteListQuery.MAX_PRIORITY - NoteListQuery.MIN_PRIORITY + 1;
+        priorityCumulative = new double[priorities];
+        double total = 0;
+        for (int i = 0; i < priorities; i++) {
+            total += 1 / Math.pow(i + 1, prioritySkew);
+            priorityCumulative[i] = total;
+        }
+        for (int i = 0; i < priorities; i++) {
+            priorityCumulative[i] /= total;
+        }
+    }
+
+    // Returns the next notes. Called repeatedly to insert a large dataset without holding all of it.
+    public List<Note> next(int count) {
+        List<Note> notes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String description;
+            if (random.nextDouble() < longFraction) {
+                // Long enough to be stored in note_body
+                StringBuilder text = new StringBuilder();
+                while (text.length() <= NoteBodies.LARGE_LENGTH) {
+                    text.append(words(minDescriptionWords, maxDescriptionWords)).append('\n');
+                }
+                description = text.toString();
+            } else {
+                description = words(minDescriptionWords, maxDescriptionWords);
+            }
+            notes.add(new Note(words(minTitleWords, maxTitleWords), description, nextPriority()));
+        }
+        return notes;
+    }
+
+    // Returns a random whole number below the bound, from the dataset's seed, for picking notes to update.
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+    // Describes the settings, for the report.
+    @Override
+    public String toString() {
+        return "seed=" + seed + " titleWords=" + minTitleWords + "-" + maxTitleWords
+                + " descriptionWords=" + minDescriptionWords + "-" + maxDescriptionWords
+                + " longFraction=" + longFraction + " prioritySkew=" + prioritySkew;
+    }
+
+    private int nextPriority() {
+        double value = random.nextDouble();
+        for (int i = 0; i < priorityCumulative.length - 1; i++) {
+            if (value < priorityCumulative[i]) {
+                return NoteListQuery.MIN_PRIORITY + i;
+            }
+        }
+        return NoteListQuery.MAX_PRIORITY;
+    }
+
+    private String words(int min, int max) {
+        int count = min + random.nextInt(max - min + 1);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    // Settings for a dataset. The defaults are short titles, descriptions of 5-100 words with one note in a
+    // hundred long enough for note_body, and low priorities more common than high ones.
+    public static class Builder {
+        private long seed = 42;
+        private int minTitleWords = 2;
+        private int maxTitleWords = 6;
+        private int minDescriptionWords = 5;
+        private int maxDescriptionWords = 100;
+        private double longFraction = 0.01;
+        private double prioritySkew = 1;
+
+        public Builder setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Builder setTitleWords(int min, int max) {
+            minTitleWords = min;
+            maxTitleWords = max;
+            return this;
+        }
+
+        public Builder setDescriptionWords(int min, int max) {
+            minDescriptionWords = min;
+            maxDescriptionWords = max;
+            return this;
+        }
+
+        // Share of notes with a description longer than NoteBodies.LARGE_LENGTH, from 0 to 1
+        public Builder setLongFraction(double longFraction) {
+            this.longFraction = longFraction;
+            return this;
+        }
+
+        // 0 for every priority equally likely, higher for more notes at low priorities
+        public Builder setPrioritySkew(double prioritySkew) {
+            this.prioritySkew = prioritySkew;
+            return this;
+        }
+
+        public NoteDataset build() {
+            if (minTitleWords < 1 || maxTitleWords < minTitleWords
+                    || minDescriptionWords < 1 || maxDescriptionWords < minDescriptionWords) {
+                throw new IllegalArgumentException("Word counts must be at least 1, with min <= max");
+            }
+            if (longFraction < 0 || longFraction > 1 || prioritySkew < 0) {
+                throw new IllegalArgumentException("Long fraction must be 0-1 and priority skew at least 0");
+            }
+            return new NoteDataset(this);
+        }
+    }
+}
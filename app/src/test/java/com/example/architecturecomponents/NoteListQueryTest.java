@@ -0,0 +1,95 @@
+package com.example.architecturecomponents;
+
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the keyset paging queries built by {@link NoteListQuery}.
+ */
+public class NoteListQueryTest {
+    private static final String SELECT = "SELECT " + NoteDao.SUMMARY_COLUMNS + " FROM note_table WHERE deletedAt = 0";
+
+    private static final NoteSummary KEY = new NoteSummary(7, "Milk", "", 3, 20, 10);
+
+    @Test
+    public void first_fullRangeHasNoPriorityFilter() {
+        SupportSQLiteQuery query = NoteListQuery.DEFAULT.first(20);
+        assertEquals(SELECT + " ORDER BY priority DESC, id DESC LIMIT ?", query.getSql());
+        assertEquals(1, query.getArgCount());
+    }
+
+    @Test
+    public void first_filtersByPriorityRange() {
+        SupportSQLiteQuery query = NoteListQuery.DEFAULT.withPriorities(4, 6).first(20);
+        assertEquals(SELECT + " AND priority BETWEEN ? AND ? ORDER BY priority DESC, id DESC LIMIT ?",
+                query.getSql());
+        assertEquals(3, query.getArgCount());
+    }
+
+    @Test
+    public void after_descendingSortContinuesBelowTheKey() {
+        SupportSQLiteQuery query = NoteListQuery.DEFAULT.withSort(NoteSort.CREATED).after(KEY, 20);
+        assertEquals(SELECT + " AND createdAt <= ? AND (createdAt < ? OR id < ?)"
+                + " ORDER BY createdAt DESC, id DESC LIMIT ?", query.getSql());
+        assertEquals(4, query.getArgCount());
+    }
+
+    @Test
+    public void after_ascendingSortContinuesAboveTheKey() {
+        SupportSQLiteQuery query = NoteListQuery.DEFAULT.withSort(NoteSort.TITLE).after(KEY, 20);
+        assertEquals(SELECT + " AND title >= ? AND (title > ? OR id > ?) ORDER BY title ASC, id ASC LIMIT ?",
+                query.getSql());
+    }
+
+    @Test
+    public void before_walksBackwardsFromTheKey() {
+        SupportSQLiteQuery query = NoteListQuery.DEFAULT.withSort(NoteSort.TITLE).before(KEY, 20);
+        assertEquals(SELECT + " AND title <= ? AND (title < ? OR id < ?) ORDER BY title DESC, id DESC LIMIT ?",
+                query.getSql());
+    }
+
+    @Test
+    public void from_includesTheKey() {
+        SupportSQLiteQuery query = NoteListQuery.DEFAULT.from(KEY, 20);
+        assertEquals(SELECT + " AND priority <= ? AND (priority < ? OR id <= ?)"
+                + " ORDER BY priority DESC, id DESC LIMIT ?", query.getSql());
+    }
+
+    @Test
+    public void ids_selectsEveryNoteInTheRangeUnordered() {
+        assertEquals("SELECT id FROM note_table WHERE deletedAt = 0", NoteListQuery.DEFAULT.ids().getSql());
+        SupportSQLiteQuery query = NoteListQuery.DEFAULT.withSort(NoteSort.TITLE).withPriorities(7, 10).ids();
+        assertEquals("SELECT id FROM note_table WHERE deletedAt = 0 AND priority BETWEEN ? AND ?", query.getSql());
+        assertEquals(2, query.getArgCount());
+    }
+
+    @Test
+    public void equals_comparesSortAndRange() {
+        assertEquals(NoteListQuery.DEFAULT, new NoteListQuery(NoteSort.PRIORITY, 1, 10));
+        assertEquals(NoteListQuery.DEFAULT.hashCode(), new NoteListQuery(NoteSort.PRIORITY, 1, 10).hashCode());
+        assertNotEquals(NoteListQuery.DEFAULT, NoteListQuery.DEFAULT.withSort(NoteSort.TITLE));
+        assertNotEquals(NoteListQuery.DEFAULT, NoteListQuery.DEFAULT.withPriorities(7, 10));
+    }
+
+    @Test
+    public void keepsPosition_onlyWhenTheSortValueAndRangeStillMatch() {
+        NoteSummary loaded = new NoteSummary(1, "Shopping", "Milk", 5, 10, 20);
+        Note samePlace = new Note("Shopping", "Milk and bread", 5);
+        Note newPriority = new Note("Shopping", "Milk", 6);
+        Note newTitle = new Note("Groceries", "Milk", 5);
+
+        assertTrue(NoteListQuery.DEFAULT.keepsPosition(loaded, samePlace));
+        assertFalse(NoteListQuery.DEFAULT.keepsPosition(loaded, newPriority));
+        assertTrue(NoteListQuery.DEFAULT.withSort(NoteSort.TITLE).keepsPosition(loaded, newPriority));
+        assertFalse(NoteListQuery.DEFAULT.withSort(NoteSort.TITLE).keepsPosition(loaded, newTitle));
+        assertTrue(NoteListQuery.DEFAULT.withSort(NoteSort.CREATED).keepsPosition(loaded, newTitle));
+        // Every edit moves a note to the top when sorted by last change
+        assertFalse(NoteListQuery.DEFAULT.withSort(NoteSort.UPDATED).keepsPosition(loaded, samePlace));
+        // Out of the range shown
+        assertFalse(NoteListQuery.DEFAULT.withSort(NoteSort.CREATED).withPriorities(6, 10)
+                .keepsPosition(loaded, samePlace));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.architecturecomponents;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the latency histograms and the DAO wrapper in {@link NoteMetrics}.
+ */
+public class NoteMetricsTest {
+    interface Dao {
+        List<String> load(int limit);
+
+        void save(List<String> items);
+
+        int fail();
+    }
+
+    @Test
+    public void bucketOf_usesPowersOfTwoMicroseconds() {
+        assertEquals(0, NoteMetrics.bucketOf(999));
+        assertEquals(1, NoteMetrics.bucketOf(1000));
+        assertEquals(2, NoteMetrics.bucketOf(3999));
+        assertEquals(11, NoteMetrics.bucketOf(1500000));
+        assertEquals(NoteMetrics.BUCKETS - 1, NoteMetrics.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void snapshot_reportsCountsAndPercentiles() {
+        NoteMetrics metrics = new NoteMetrics();
+        for (int i = 0; i < 99; i++) {
+            metrics.record("op", 1500000, 2);
+        }
+        metrics.recordError("op", 50000000);
+
+        NoteMetrics.Snapshot snapshot = metrics.getSnapshot("op");
+        assertEquals(100, snapshot.count);
+        assertEquals(1, snapshot.errors);
+        assertEquals(198, snapshot.rows);
+        assertEquals(50000000, snapshot.maxNanos);
+        // 1.5ms falls in the bucket up to 2.048ms, the slowest call is capped at the max
+        assertEquals(2048000, snapshot.getPercentileNanos(50));
+        assertEquals(2048000, snapshot.getPercentileNanos(99));
+        assertEquals(50000000, snapshot.getPercentileNanos(100));
+        assertNull(metrics.getSnapshot("other"));
+    }
+
+    @Test
+    public void instrument_timesCallsAndCountsRowsAndErrors() {
+        NoteMetrics metrics = new NoteMetrics();
+        Dao dao = metrics.instrument(Dao.class, new Dao() {
+            @Override
+            public List<String> load(int limit) {
+                return Arrays.asList("a", "b", "c").subList(0, limit);
+            }
+
+            @Override
+            public void save(List<String> items) {
+            }
+
+            @Override
+            public int fail() {
+                throw new IllegalStateException("broken");
+            }
+        }, "Dao");
+
+        assertEquals(Arrays.asList("a", "b"), dao.load(2));
+        dao.save(Arrays.asList("x", "y", "z"));
+        try {
+            dao.fail();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("broken", e.getMessage());
+        }
+
+        assertEquals(2, metrics.getSnapshot("Dao.load").rows);
+        assertEquals(3, metrics.getSnapshot("Dao.save").rows);
+        assertEquals(1, metrics.getSnapshot("Dao.fail").errors);
+        assertEquals(3, metrics.getSnapshots().size());
+        assertTrue(metrics.toJson().contains("\"name\": \"Dao.load\", \"count\": 1, \"errors\": 0, \"rows\": 2"));
+    }
+}
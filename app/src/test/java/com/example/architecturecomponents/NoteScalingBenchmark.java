@@ -0,0 +1,213 @@
+package com.example.architecturecomponents;
+
+import android.app.Application;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import androidx.sqlite.db.SimpleSQLiteQuery;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures how the note table scales: insert throughput through NoteRepository's writer, list page latency
+ * at the top and the middle of the list, update latency and the time to delete every note, at each of the
+ * dataset sizes asked for. Runs Room against a real SQLite database file on the JVM with Robolectric.
+ * Skipped unless sizes are given, as the larger sizes take minutes:
+ * ./gradlew :app:testDebugUnitTest --tests '*NoteScalingBenchmark' -PnoteScaling.sizes=1000,10000,100000,1000000
+ * The dataset can be changed with -PnoteScaling.prioritySkew, -PnoteScaling.longFraction and
+ * -PnoteScaling.seed. Each run writes a JSON report to app/build/reports/note-scaling.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, application = Application.class)
+public class NoteScalingBenchmark {
+    // Notes handed to the writer at a time while inserting
+    private static final int INSERT_CHUNK = 1000;
+    // Times each list query is run, and notes updated, at each size
+    private static final int QUERY_RUNS = 50;
+    private static final int UPDATE_RUNS = 100;
+    // Notes per list page, as in NoteRepository
+    private static final int PAGE_SIZE = 50;
+
+    @Test
+    public void scaling() throws Exception {
+        String sizesProperty = System.getProperty("noteScaling.sizes");
+        assumeTrue("Set -PnoteScaling.sizes to run", sizesProperty != null && !sizesProperty.isEmpty());
+
+        final List<Integer> sizes = new ArrayList<>();
+        for (String size : sizesProperty.split(",")) {
+            sizes.add(Integer.parseInt(size.trim()));
+        }
+        Collections.sort(sizes);
+        final NoteDataset.Builder dataset = new NoteDataset.Builder()
+                .setSeed(Long.getLong("noteScaling.seed", 42))
+                .setLongFraction(Double.parseDouble(System.getProperty("noteScaling.longFraction", "0.01")))
+                .setPrioritySkew(Double.parseDouble(System.getProperty("noteScaling.prioritySkew", "1")));
+
+        // Room doesn't allow queries on the main thread, which the test thread is under Robolectric
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            String report = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return run(sizes, dataset);
+                }
+            }).get();
+            System.out.println(report);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Runs every size from an empty table, saves the JSON report and returns a table of the medians
+    private String run(List<Integer> sizes, NoteDataset.Builder datasetBuilder) throws Exception {
+        Application application = RuntimeEnvironment.application;
+        NoteRepository repository = NoteRepository.getInstance(application);
+        NoteDao noteDao = NoteDatabase.getInstance(application).noteDao();
+        File databaseFile = application.getDatabasePath("note_database");
+        NoteDataset settings = datasetBuilder.build();
+
+        StringBuilder json = new StringBuilder("{\n  \"date\": \"")
+                .append(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.US).format(new Date()))
+                .append("\",\n  \"dataset\": \"").append(settings).append("\",\n  \"results\": [");
+        StringBuilder table = new StringBuilder(String.format(Locale.US, "%10s %12s %12s %12s %12s %12s %12s %12s%n",
+                "notes", "insert/s", "first ms", "middle ms", "title ms", "range ms", "update ms", "deleteAll ms"));
+
+        // The seed notes are cleared first, every size starts from an empty table
+        repository.deleteAllNotes(NO_PROGRESS);
+        for (int s = 0; s < sizes.size(); s++) {
+            int size = sizes.get(s);
+            NoteDataset dataset = datasetBuilder.build();
+
+            long start = System.nanoTime();
+            for (int inserted = 0; inserted < size; inserted += INSERT_CHUNK) {
+                for (Note note : dataset.next(Math.min(INSERT_CHUNK, size - inserted))) {
+                    repository.insert(note);
+                }
+            }
+            repository.flush();
+            long insertNanos = System.nanoTime() - start;
+            assertEquals(size, noteDao.countNotes());
+            long fileBytes = databaseFile.length();
+
+            // A key halfway down the list, as if the user had scrolled there
+            NoteListQuery byPriority = NoteListQuery.DEFAULT;
+            NoteSummary middle = noteDao.getNotes(new SimpleSQLiteQuery("SELECT " + NoteDao.SUMMARY_COLUMNS
+                    + " FROM note_table WHERE deletedAt = 0 ORDER BY priority DESC, id DESC LIMIT 1 OFFSET ?",
+                    new Object[]{size / 2})).get(0);
+            long[] first = timeQuery(noteDao, byPriority, null);
+            long[] fromMiddle = timeQuery(noteDao, byPriority, middle);
+            long[] byTitle = timeQuery(noteDao, byPriority.withSort(NoteSort.TITLE), null);
+            long[] priorityRange = timeQuery(noteDao, byPriority.withPriorities(8, 10), null);
+
+            // Each update is timed until it has been committed. The note is loaded whole the way the editor
+            // does, so a long description is written back in full rather than cut down to its inline part.
+            int firstId = noteDao.getNotes(new SimpleSQLiteQuery("SELECT " + NoteDao.SUMMARY_COLUMNS
+                    + " FROM note_table ORDER BY id LIMIT 1")).get(0).getId();
+            long[] updates = new long[UPDATE_RUNS];
+            for (int i = 0; i < UPDATE_RUNS; i++) {
+                Note loaded = noteDao.getNoteById(firstId + dataset.nextInt(size));
+                NoteBodies.loadInto(noteDao, Collections.singletonList(loaded));
+                Note note = new Note(loaded.getTitle() + " edited", loaded.getDescription(), loaded.getPriority());
+                note.setId(loaded.getId());
+                note.setCreatedAt(loaded.getCreatedAt());
+                long updateStart = System.nanoTime();
+                repository.update(note);
+                repository.flush();
+                updates[i] = System.nanoTime() - updateStart;
+            }
+
+            start = System.nanoTime();
+            repository.deleteAllNotes(NO_PROGRESS);
+            long deleteAllNanos = System.nanoTime() - start;
+            assertEquals(0, noteDao.countNotes());
+
+            double insertsPerSecond = size * 1e9 / insertNanos;
+            json.append(s == 0 ? "\n" : ",\n")
+                    .append("    {\"notes\": ").append(size)
+                    .append(", \"insertNanos\": ").append(insertNanos)
+                    .append(", \"insertsPerSecond\": ").append(Math.round(insertsPerSecond))
+                    .append(", \"fileBytes\": ").append(fileBytes)
+                    .append(", \"firstPage\": ").append(percentilesJson(first))
+                    .append(", \"middlePage\": ").append(percentilesJson(fromMiddle))
+                    .append(", \"titlePage\": ").append(percentilesJson(byTitle))
+                    .append(", \"priorityRangePage\": ").append(percentilesJson(priorityRange))
+                    .append(", \"update\": ").append(percentilesJson(updates))
+                    .append(", \"deleteAllNanos\": ").append(deleteAllNanos).append('}');
+            table.append(String.format(Locale.US, "%10d %12.0f %12.3f %12.3f %12.3f %12.3f %12.3f %12.1f%n",
+                    size, insertsPerSecond, millis(percentile(first, 50)), millis(percentile(fromMiddle, 50)),
+                    millis(percentile(byTitle, 50)), millis(percentile(priorityRange, 50)),
+                    millis(percentile(updates, 50)), millis(deleteAllNanos)));
+        }
+        json.append("\n  ]\n}\n");
+        writeReport(json.toString());
+        return "Median times, " + settings + "\n" + table;
+    }
+
+    // Runs the page query QUERY_RUNS times, from the top of the list or after the key, returns the times
+    private static long[] timeQuery(NoteDao noteDao, NoteListQuery query, NoteSummary key) {
+        long[] nanos = new long[QUERY_RUNS];
+        for (int i = 0; i < QUERY_RUNS; i++) {
+            long start = System.nanoTime();
+            List<NoteSummary> page = noteDao.getNotes(key == null ? query.first(PAGE_SIZE) : query.after(key, PAGE_SIZE));
+            nanos[i] = System.nanoTime() - start;
+            assertFalse(page.isEmpty());
+        }
+        return nanos;
+    }
+
+    private static long percentile(long[] nanos, int percent) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+
+    private static String percentilesJson(long[] nanos) {
+        return "{\"p50Nanos\": " + percentile(nanos, 50) + ", \"p90Nanos\": " + percentile(nanos, 90)
+                + ", \"maxNanos\": " + percentile(nanos, 100) + "}";
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    // Saves the report under a name with the time of the run, so earlier runs are kept to compare against
+    private static void writeReport(String json) throws IOException {
+        File directory = new File(System.getProperty("noteScaling.reportDir", "build/reports/note-scaling"));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Couldn't create " + directory);
+        }
+        File file = new File(directory, "note-scaling-"
+                + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date()) + ".json");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            out.write(json);
+        }
+        System.out.println("Report saved to " + file);
+    }
+
+    private static final NoteRepository.ProgressListener NO_PROGRESS = new NoteRepository.ProgressListener() {
+        @Override
+        public void onProgress(int done, int total) {
+        }
+    };
+}
@@ -0,0 +1,83 @@
+package com.example.architecturecomponents;
+
+import android.app.Application;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Searches notes written through {@link NoteRepository}, checking that the whole of a long description is
+ * in the search index, not only the start of it kept in note_table, and that it stays right as the note
+ * is edited. Runs Room against a real SQLite database on the JVM with Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, application = Application.class)
+public class NoteSearchIndexTest {
+
+    @Test
+    public void search_findsWordsAnywhereInALongDescription() throws Exception {
+        // Room doesn't allow queries on the main thread, which the test thread is under Robolectric
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    run();
+                    return null;
+                }
+            }).get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void run() throws Exception {
+        Application application = RuntimeEnvironment.application;
+        NoteRepository repository = NoteRepository.getInstance(application);
+        NoteDao noteDao = NoteDatabase.getInstance(application).noteDao();
+
+        StringBuilder description = new StringBuilder();
+        while (description.length() <= NoteBodies.LARGE_LENGTH) {
+            description.append("Pack the bags. ");
+        }
+        description.append("Zanzibar");
+        assertTrue(description.indexOf("Zanzibar") > NoteBodies.LARGE_LENGTH);
+        int id = repository.insertAndGetId(new Note("Trip", description.toString(), 3));
+        assertArrayEquals(new int[]{id}, search(noteDao, "zanzibar"));
+
+        // Editing only the title keeps the full text indexed
+        Note edited = new Note("Holiday", description.toString(), 3);
+        edited.setId(id);
+        repository.updateFields(edited, NoteWriter.FIELD_TITLE);
+        repository.flush();
+        assertArrayEquals(new int[]{id}, search(noteDao, "holiday"));
+        assertArrayEquals(new int[]{id}, search(noteDao, "zanzibar"));
+
+        // Changing the end of the description, past what note_table keeps, reindexes it
+        edited = new Note("Holiday", description.toString().replace("Zanzibar", "Madagascar"), 3);
+        edited.setId(id);
+        repository.updateFields(edited, NoteWriter.FIELD_DESCRIPTION);
+        repository.flush();
+        assertArrayEquals(new int[0], search(noteDao, "zanzibar"));
+        assertArrayEquals(new int[]{id}, search(noteDao, "madagascar"));
+    }
+
+    private static int[] search(NoteDao noteDao, String matchExpression) {
+        List<NoteMatch> matches = noteDao.searchMatches(matchExpression);
+        int[] ids = new int[matches.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = matches.get(i).id;
+        }
+        return ids;
+    }
+}
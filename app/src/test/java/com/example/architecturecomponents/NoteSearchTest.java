@@ -0,0 +1,80 @@
+package com.example.architecturecomponents;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the search text handling and ranking in {@link NoteSearchQuery} and
+ * {@link NoteSearchRanker}.
+ */
+public class NoteSearchTest {
+    @Test
+    public void matchExpression_prefixesEachToken() {
+        assertEquals("shop* list*", NoteSearchQuery.toMatchExpression("Shop list"));
+    }
+
+    @Test
+    public void matchExpression_dropsFtsSyntax() {
+        assertEquals("a* b* c*", NoteSearchQuery.toMatchExpression("\"a\" -b* (c"));
+    }
+
+    @Test
+    public void matchExpression_emptyWhenNothingSearchable() {
+        assertEquals("", NoteSearchQuery.toMatchExpression("  --- "));
+        assertEquals("", NoteSearchQuery.toMatchExpression(null));
+    }
+
+    @Test
+    public void rank_titleHitsBeatDescriptionHits() {
+        // One phrase, two columns (title, description): hits in this row, hits in all rows, rows with hits.
+        NoteMatch inDescription = match(1, 1, 2, new int[]{0, 4, 2, 1, 4, 2});
+        NoteMatch inTitle = match(2, 1, 2, new int[]{1, 4, 2, 0, 4, 2});
+        int[] ranked = NoteSearchRanker.rank(Arrays.asList(inDescription, inTitle));
+        assertArrayEquals(new int[]{2, 1}, ranked);
+    }
+
+    @Test
+    public void rank_tiesAreNewestFirst() {
+        NoteMatch older = match(3, 1, 2, new int[]{1, 2, 2, 0, 0, 0});
+        NoteMatch newer = match(8, 1, 2, new int[]{1, 2, 2, 0, 0, 0});
+        int[] ranked = NoteSearchRanker.rank(Arrays.asList(older, newer));
+        assertArrayEquals(new int[]{8, 3}, ranked);
+    }
+
+    @Test
+    public void rank_capKeepsTheBestHitsWhereverTheyAre() {
+        // More hits than the cap, with the title hits (the best) last, as SQLite may well return them
+        List<NoteMatch> matches = new ArrayList<>();
+        for (int id = 1; id <= NoteSearchRanker.MAX_RESULTS; id++) {
+            matches.add(match(id, 1, 2, new int[]{0, 3, 3, 1, 5000, 5000}));
+        }
+        int best = NoteSearchRanker.MAX_RESULTS + 1;
+        for (int id = best; id < best + 3; id++) {
+            matches.add(match(id, 1, 2, new int[]{1, 3, 3, 0, 5000, 5000}));
+        }
+        int[] ranked = NoteSearchRanker.rank(matches, NoteSearchRanker.MAX_RESULTS);
+        assertEquals(NoteSearchRanker.MAX_RESULTS, ranked.length);
+        assertArrayEquals(new int[]{best + 2, best + 1, best}, Arrays.copyOf(ranked, 3));
+        // The cap drops the worst of the description hits, which are the oldest of the ties
+        assertEquals(4, ranked[ranked.length - 1]);
+    }
+
+    private static NoteMatch match(int id, int phrases, int columns, int[] hits) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * (2 + hits.length)).order(ByteOrder.nativeOrder());
+        buffer.putInt(phrases).putInt(columns);
+        for (int hit : hits) {
+            buffer.putInt(hit);
+        }
+        NoteMatch match = new NoteMatch();
+        match.id = id;
+        match.matchInfo = buffer.array();
+        return match;
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.architecturecomponents;
+
+import android.app.Application;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Syncs the notes with a {@link MockSyncServer} through {@link NoteSync}: the first sync pushes every note,
+ * later ones only what changed on either side, an edit made to an older version than the server's loses
+ * to the server's copy, and a pulled priority out of range is turned down. Runs Room against a real SQLite
+ * database on the JVM with Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, application = Application.class)
+public class NoteSyncTest {
+
+    @Test
+    public void sync_pushesAndPullsOnlyTheChanges() throws Exception {
+        // Room doesn't allow queries on the main thread, which the test thread is under Robolectric
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        MockSyncServer server = new MockSyncServer();
+        try {
+            final MockSyncServer syncServer = server;
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    run(syncServer);
+                    return null;
+                }
+            }).get();
+        } finally {
+            executor.shutdown();
+            server.stop();
+        }
+    }
+
+    private void run(MockSyncServer server) throws Exception {
+        Application application = RuntimeEnvironment.application;
+        NoteRepository repository = NoteRepository.getInstance(application);
+        NoteDao noteDao = NoteDatabase.getInstance(application).noteDao();
+        NoteSync sync = repository.newSync(server.getUrl());
+
+        // The seed notes were logged when the database was created, so the first sync pushes them all. The
+        // pull gets them back, but they already have the server's version and are left alone.
+        int count = noteDao.countNotes();
+        NoteSync.Result first = sync.sync();
+        assertEquals(count, first.pushed);
+        assertEquals(0, first.conflicts);
+        assertEquals(0, first.pulled);
+        assertTrue(noteDao.getChangelog(NoteSync.PUSH_BATCH).isEmpty());
+        List<Note> notes = noteDao.getNotesByGuids(Collections.singletonList(noteDao.getFirstGuids(1).get(0)));
+        Note synced = notes.get(0);
+        assertEquals(1, synced.getVersion());
+        assertEquals(synced.getTitle(), server.get(synced.getGuid()).getTitle());
+
+        // Nothing changed, so nothing is sent or applied
+        NoteSync.Result idle = sync.sync();
+        assertEquals(0, idle.pushed + idle.conflicts + idle.pulled);
+
+        // A local edit is pushed and an edit made on the server is pulled
+        List<String> guids = noteDao.getFirstGuids(2);
+        editTitle(repository, noteDao, guids.get(0), "Edited here");
+        server.edit(guids.get(1), "Edited elsewhere");
+        NoteSync.Result both = sync.sync();
+        assertEquals(1, both.pushed);
+        assertEquals(1, both.pulled);
+        assertEquals("Edited here", server.get(guids.get(0)).getTitle());
+        assertEquals(2, note(noteDao, guids.get(0)).getVersion());
+        assertEquals("Edited elsewhere", note(noteDao, guids.get(1)).getTitle());
+        assertEquals(2, note(noteDao, guids.get(1)).getVersion());
+
+        // Edited on both sides since the last sync, the server got its edit first so it wins
+        server.edit(guids.get(0), "Server wins");
+        editTitle(repository, noteDao, guids.get(0), "Local loses");
+        NoteSync.Result conflict = sync.sync();
+        assertEquals(0, conflict.pushed);
+        assertEquals(1, conflict.conflicts);
+        assertEquals("Server wins", note(noteDao, guids.get(0)).getTitle());
+        assertEquals("Server wins", server.get(guids.get(0)).getTitle());
+        assertTrue(noteDao.getChangelog(NoteSync.PUSH_BATCH).isEmpty());
+
+        // A new sync carries on from the saved cursor, a delete is pushed as a tombstone
+        int requests = server.getRequests();
+        repository.delete(Collections.singletonList(note(noteDao, guids.get(1)).getId()));
+        repository.flush();
+        NoteSync.Result deleted = repository.newSync(server.getUrl()).sync();
+        assertEquals(1, deleted.pushed);
+        assertEquals(0, deleted.pulled);
+        assertTrue(server.get(guids.get(1)).getDeletedAt() > 0);
+        // One push and one page pulled
+        assertEquals(requests + 2, server.getRequests());
+
+        // A priority the app can't show fails the pull, like an import, and the note is left as it was
+        int priority = note(noteDao, guids.get(0)).getPriority();
+        server.editPriority(guids.get(0), NoteListQuery.MAX_PRIORITY + 89);
+        try {
+            repository.newSync(server.getUrl()).sync();
+            fail("Pulled a priority out of range");
+        } catch (IOException expected) {
+            // Turned down
+        }
+        assertEquals(priority, note(noteDao, guids.get(0)).getPriority());
+        assertEquals(3, note(noteDao, guids.get(0)).getVersion());
+    }
+
+    // Changes the note's title the way the editor does, and waits for it to be written
+    private static void editTitle(NoteRepository repository, NoteDao noteDao, String guid, String title)
+            throws InterruptedException {
+        Note note = note(noteDao, guid);
+        Note edited = new Note(title, note.getDescription(), note.getPriority());
+        edited.setId(note.getId());
+        repository.updateFields(edited, NoteWriter.FIELD_TITLE);
+        repository.flush();
+    }
+
+    private static Note note(NoteDao noteDao, String guid) {
+        Note note = noteDao.getNotesByGuids(Collections.singletonList(guid)).get(0);
+        NoteBodies.loadInto(noteDao, Collections.singletonList(note));
+        return note;
+    }
+}
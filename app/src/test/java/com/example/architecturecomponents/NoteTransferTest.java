@@ -0,0 +1,75 @@
+package com.example.architecturecomponents;
+
+import android.app.Application;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Imports a CSV file through {@link NoteTransfer} that goes bad part way, checking that the chunks read
+ * before the bad note are kept and that the failure says how many notes that was. Runs Room against a real
+ * SQLite database on the JVM with Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, application = Application.class)
+public class NoteTransferTest {
+
+    @Test
+    public void importNotes_failurePartWayReportsTheNotesKept() throws Exception {
+        // Room doesn't allow queries on the main thread, which the test thread is under Robolectric
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    run();
+                    return null;
+                }
+            }).get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void run() throws Exception {
+        Application application = RuntimeEnvironment.application;
+        NoteRepository repository = NoteRepository.getInstance(application);
+        NoteDao noteDao = NoteDatabase.getInstance(application).noteDao();
+        int before = noteDao.countNotes();
+
+        // One full chunk and a few notes of the next, then a priority out of range
+        StringBuilder csv = new StringBuilder("title,description,priority\r\n");
+        for (int i = 0; i < NoteTransfer.CHUNK_SIZE + 5; i++) {
+            csv.append("Note ").append(i).append(",Imported,3\r\n");
+        }
+        csv.append("Bad,Imported,11\r\n");
+
+        final int[] reported = new int[1];
+        try {
+            repository.newTransfer().importNotes(new ByteArrayInputStream(csv.toString().getBytes("UTF-8")),
+                    new NoteTransfer.Listener() {
+                        @Override
+                        public void onProgress(int notes) {
+                            reported[0] = notes;
+                        }
+                    });
+            fail("The import should have failed");
+        } catch (NoteTransfer.ImportException e) {
+            // The full chunk was committed, the part of the next one read before the bad note was not
+            assertEquals(NoteTransfer.CHUNK_SIZE, e.notes);
+            assertTrue(e.getMessage(), e.getMessage().contains("Priority"));
+        }
+        assertEquals(NoteTransfer.CHUNK_SIZE, reported[0]);
+        assertEquals(before + NoteTransfer.CHUNK_SIZE, noteDao.countNotes());
+    }
+}
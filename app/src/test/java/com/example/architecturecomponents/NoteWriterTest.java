@@ -0,0 +1,373 @@
+package com.example.architecturecomponents;
+
+import android.app.Application;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes notes through a {@link NoteWriter} of its own: queued writes are joined into one transaction up
+ * to the row limit, a full queue holds up whoever adds to it, a batch that fails is retried one write at
+ * a time, a flush waits for everything queued before it, listeners are told what each transaction changed,
+ * and the metrics add up. The writer thread is held in a change listener while writes are queued, so each
+ * test knows exactly what is in each batch. Runs Room against a real in-memory SQLite database on the JVM
+ * with Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, application = Application.class)
+public class NoteWriterTest {
+    // Notes the database is created with
+    private static final int SEED_NOTES = 3;
+
+    @Test
+    public void joinsQueuedWritesIntoOneTransaction() throws Exception {
+        inBackground(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                NoteDatabase database = NoteDatabase.inMemory(RuntimeEnvironment.application);
+                try {
+                    NoteDao noteDao = database.noteDao();
+                    NoteWriter writer = new NoteWriter(database, 64, 500);
+                    Recorder recorder = new Recorder(true);
+                    writer.addChangeListener(recorder);
+
+                    // Held in the first transaction's listener while the rest are queued
+                    writer.insert(note("First"));
+                    recorder.awaitCommits(1);
+                    for (int i = 0; i < 10; i++) {
+                        writer.insert(note("Queued " + i));
+                    }
+                    writer.updateFields(titled(noteDao, 1, "Edited 1"), NoteWriter.FIELD_TITLE);
+                    writer.updateFields(titled(noteDao, 2, "Edited 2"), NoteWriter.FIELD_TITLE);
+                    assertEquals(12, writer.getStats().queueDepth);
+                    recorder.release();
+                    recorder.awaitCommits(1);
+                    // The barrier is only queued once the second batch has been taken, so it is a batch alone
+                    writer.flush();
+
+                    // Each run of the same kind of write is one bulk change, all in the one transaction
+                    List<NoteChange> second = recorder.committed.get(1);
+                    assertEquals(2, second.size());
+                    assertEquals(NoteChange.INSERTED, second.get(0).type);
+                    assertEquals(10, second.get(0).ids.size());
+                    assertEquals(NoteChange.UPDATED, second.get(1).type);
+                    assertEquals(Arrays.asList(1, 2), second.get(1).ids);
+                    assertEquals(SEED_NOTES + 11, noteDao.countNotes());
+                    assertEquals("Edited 2", noteDao.getNoteById(2).getTitle());
+
+                    NoteWriter.Stats stats = writer.getStats();
+                    assertEquals(0, stats.queueDepth);
+                    assertEquals(12, stats.maxQueueDepth);
+                    assertEquals(3, stats.batches);
+                    assertEquals(13, stats.rows);
+                    assertEquals(0, stats.lastBatchRows);
+                    assertEquals(12, stats.maxBatchRows);
+                    assertEquals(0, stats.failedBatches);
+                    assertEquals(13 / 3.0, stats.getAverageBatchRows(), 1e-9);
+                } finally {
+                    database.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void batchesStopAtTheRowLimit() throws Exception {
+        inBackground(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                NoteDatabase database = NoteDatabase.inMemory(RuntimeEnvironment.application);
+                try {
+                    NoteWriter writer = new NoteWriter(database, 64, 5);
+                    Recorder recorder = new Recorder(true);
+                    writer.addChangeListener(recorder);
+
+                    writer.insert(note("First"));
+                    recorder.awaitCommits(1);
+                    for (int i = 0; i < 8; i++) {
+                        writer.insert(note("Queued " + i));
+                    }
+                    recorder.release();
+                    recorder.awaitCommits(2);
+                    writer.flush();
+
+                    // Five rows fill the second batch, the other three go in the next
+                    assertEquals(5, recorder.committed.get(1).get(0).ids.size());
+                    assertEquals(3, recorder.committed.get(2).get(0).ids.size());
+                    assertEquals(5, writer.getStats().maxBatchRows);
+                    assertEquals(4, writer.getStats().batches);
+                } finally {
+                    database.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void fullQueueHoldsUpTheWriteUntilThereIsSpace() throws Exception {
+        inBackground(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                NoteDatabase database = NoteDatabase.inMemory(RuntimeEnvironment.application);
+                try {
+                    final NoteWriter writer = new NoteWriter(database, 2, 500);
+                    Recorder recorder = new Recorder(true);
+                    writer.addChangeListener(recorder);
+
+                    writer.insert(note("First"));
+                    recorder.awaitCommits(1);
+                    writer.insert(note("Queued 1"));
+                    writer.insert(note("Queued 2"));
+
+                    // The queue is full, so the next write waits for the writer
+                    Thread producer = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            writer.insert(note("Held up"));
+                        }
+                    });
+                    producer.start();
+                    long deadline = System.currentTimeMillis() + 5000;
+                    while (producer.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+                        Thread.sleep(10);
+                    }
+                    assertEquals(Thread.State.WAITING, producer.getState());
+                    assertEquals(2, writer.getStats().queueDepth);
+
+                    recorder.release();
+                    producer.join(5000);
+                    assertFalse(producer.isAlive());
+                    writer.flush();
+                    assertEquals(SEED_NOTES + 4, database.noteDao().countNotes());
+                    assertEquals(2, writer.getStats().maxQueueDepth);
+                } finally {
+                    database.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void failedBatchIsRetriedOneWriteAtATime() throws Exception {
+        inBackground(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                NoteDatabase database = NoteDatabase.inMemory(RuntimeEnvironment.application);
+                try {
+                    NoteDao noteDao = database.noteDao();
+                    NoteWriter writer = new NoteWriter(database, 64, 500);
+                    Recorder recorder = new Recorder(true);
+                    writer.addChangeListener(recorder);
+
+                    writer.insert(note("First"));
+                    recorder.awaitCommits(1);
+                    // A guid already taken breaks the unique index, and with it the batch it is in
+                    Note duplicate = note("Duplicate");
+                    duplicate.setGuid(noteDao.getNoteById(1).getGuid());
+                    writer.insert(note("Before"));
+                    writer.insert(duplicate);
+                    writer.insert(note("After"));
+                    recorder.release();
+                    writer.flush();
+
+                    // The notes either side of the bad one are still written, each in its own transaction
+                    assertEquals(SEED_NOTES + 3, noteDao.countNotes());
+                    assertEquals(3, recorder.committed.size());
+                    assertEquals("Before", recorder.committed.get(1).get(0).notes.get(0).getTitle());
+                    assertEquals("After", recorder.committed.get(2).get(0).notes.get(0).getTitle());
+                    assertEquals(1, writer.getStats().failedBatches);
+
+                    // A write with a result gets 0 when it fails on its own too
+                    Note again = note("Duplicate again");
+                    again.setGuid(duplicate.getGuid());
+                    assertEquals(0, writer.insertAndGetId(again));
+                    assertEquals(2, writer.getStats().failedBatches);
+                } finally {
+                    database.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void flushWaitsForEveryWriteQueuedBeforeIt() throws Exception {
+        inBackground(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                NoteDatabase database = NoteDatabase.inMemory(RuntimeEnvironment.application);
+                try {
+                    NoteDao noteDao = database.noteDao();
+                    // A small row limit, so the writes take several transactions
+                    NoteWriter writer = new NoteWriter(database, 64, 10);
+                    Recorder recorder = new Recorder(false);
+                    writer.addChangeListener(recorder);
+
+                    for (int chunk = 0; chunk < 3; chunk++) {
+                        List<Note> notes = new ArrayList<>();
+                        for (int i = 0; i < 25; i++) {
+                            notes.add(note("Chunk " + chunk + " note " + i));
+                        }
+                        writer.insertAll(notes);
+                    }
+                    writer.delete(Arrays.asList(1, 2, 3));
+                    writer.flush();
+
+                    // Committed, and the listeners told, before the flush returns
+                    assertEquals(SEED_NOTES + 75, noteDao.countNotes());
+                    assertTrue(noteDao.getNoteById(3).getDeletedAt() > 0);
+                    int inserted = 0;
+                    NoteChange last = null;
+                    for (List<NoteChange> changes : recorder.committed) {
+                        for (NoteChange change : changes) {
+                            if (change.type == NoteChange.INSERTED) {
+                                inserted += change.ids.size();
+                            }
+                            last = change;
+                        }
+                    }
+                    assertEquals(75, inserted);
+                    assertEquals(NoteChange.DELETED, last.type);
+                } finally {
+                    database.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void listenersAreToldWhatEachWriteChanged() throws Exception {
+        inBackground(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                NoteDatabase database = NoteDatabase.inMemory(RuntimeEnvironment.application);
+                try {
+                    NoteDao noteDao = database.noteDao();
+                    NoteWriter writer = new NoteWriter(database, 64, 500);
+                    Recorder recorder = new Recorder(false);
+                    writer.addChangeListener(recorder);
+
+                    int id = writer.insertAndGetId(note("New"));
+                    assertChange(recorder, NoteChange.INSERTED, Collections.singletonList(id));
+                    assertEquals("New", lastChange(recorder).notes.get(0).getTitle());
+
+                    writer.updateFields(titled(noteDao, id, "Renamed"), NoteWriter.FIELD_TITLE);
+                    writer.flush();
+                    assertChange(recorder, NoteChange.UPDATED, Collections.singletonList(id));
+                    assertEquals("Renamed", lastChange(recorder).notes.get(0).getTitle());
+
+                    writer.setPriority(Arrays.asList(1, id), 9);
+                    writer.flush();
+                    assertChange(recorder, NoteChange.PRIORITY_SET, Arrays.asList(1, id));
+                    assertEquals(9, noteDao.getNoteById(1).getPriority());
+
+                    writer.delete(Collections.singletonList(id));
+                    writer.flush();
+                    assertChange(recorder, NoteChange.DELETED, Collections.singletonList(id));
+                    writer.restore(Collections.singletonList(id));
+                    writer.flush();
+                    assertChange(recorder, NoteChange.RESTORED, Collections.singletonList(id));
+
+                    // A flush on its own changes nothing, and a removed listener hears nothing more
+                    int calls = recorder.committed.size();
+                    writer.flush();
+                    writer.removeChangeListener(recorder);
+                    writer.insert(note("Unheard"));
+                    writer.flush();
+                    assertEquals(calls, recorder.committed.size());
+                } finally {
+                    database.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    // Room doesn't allow queries on the main thread, which the test thread is under Robolectric
+    private static void inBackground(Callable<Void> test) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(test).get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Note note(String title) {
+        return new Note(title, "Written by the test", 3);
+    }
+
+    // The stored note with a new title, every other field as it is, the way the editor hands an edit over
+    private static Note titled(NoteDao noteDao, int id, String title) {
+        Note stored = noteDao.getNoteById(id);
+        Note note = new Note(title, stored.getDescription(), stored.getPriority());
+        note.setId(id);
+        note.setCreatedAt(stored.getCreatedAt());
+        return note;
+    }
+
+    private static NoteChange lastChange(Recorder recorder) {
+        List<NoteChange> changes = recorder.committed.get(recorder.committed.size() - 1);
+        return changes.get(changes.size() - 1);
+    }
+
+    private static void assertChange(Recorder recorder, int type, List<Integer> ids) {
+        NoteChange change = lastChange(recorder);
+        assertEquals(type, change.type);
+        assertEquals(ids, change.ids);
+    }
+
+    // Keeps the changes of each committed transaction. If asked to, it holds the writer thread in the first
+    // call until released, which real listeners must never do, so the test can queue writes behind it.
+    private static class Recorder implements NoteWriter.ChangeListener {
+        private final List<List<NoteChange>> committed = Collections.synchronizedList(new ArrayList<List<NoteChange>>());
+        private final Semaphore commits = new Semaphore(0);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        Recorder(boolean holdFirst) {
+            if (!holdFirst) {
+                released.countDown();
+            }
+        }
+
+        @Override
+        public void onChanges(List<NoteChange> changes) {
+            committed.add(changes);
+            commits.release();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void release() {
+            released.countDown();
+        }
+
+        // Waits for this many more transactions to be reported
+        void awaitCommits(int count) throws InterruptedException {
+            assertTrue("Writer didn't commit", commits.tryAcquire(count, 5, TimeUnit.SECONDS));
+        }
+    }
+}
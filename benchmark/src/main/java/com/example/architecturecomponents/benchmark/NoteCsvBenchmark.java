@@ -0,0 +1,64 @@
+package com.example.architecturecomponents.benchmark;
+
+import com.example.architecturecomponents.Note;
+import com.example.architecturecomponents.NoteCsv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cost of the CSV half of an import/export of the whole note table, in memory so disk speed isn't measured.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NoteCsvBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int notes;
+
+    private List<Note> noteList;
+    private String csv;
+
+    @Setup
+    public void setUp() throws IOException {
+        noteList = SyntheticNotes.notes(notes);
+        csv = write();
+    }
+
+    @Benchmark
+    public String write() throws IOException {
+        StringWriter out = new StringWriter();
+        NoteCsv.writeRecord(out, "title", "description", "priority");
+        for (Note note : noteList) {
+            NoteCsv.writeRecord(out, note.getTitle(), note.getDescription(), String.valueOf(note.getPriority()));
+        }
+        return out.toString();
+    }
+
+    @Benchmark
+    public int read() throws IOException {
+        BufferedReader in = new BufferedReader(new StringReader(csv));
+        int records = 0;
+        while (NoteCsv.readRecord(in) != null) {
+            records++;
+        }
+        return records;
+    }
+}
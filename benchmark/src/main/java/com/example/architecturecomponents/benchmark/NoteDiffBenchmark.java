@@ -0,0 +1,75 @@
+package com.example.architecturecomponents.benchmark;
+
+import com.example.architecturecomponents.NoteDiff;
+import com.example.architecturecomponents.NoteSummary;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cost of the list diff rules for a whole reloaded list, where every item is a new object with the same
+// values (the usual case after a single note changes). Compares the updatedAt rule in NoteDiff with the
+// text comparison the adapter used before.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NoteDiffBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int notes;
+
+    private List<NoteSummary> oldList;
+    private List<NoteSummary> newList;
+
+    @Setup
+    public void setUp() {
+        oldList = SyntheticNotes.summaries(notes);
+        newList = new ArrayList<>(notes);
+        for (NoteSummary summary : oldList) {
+            newList.add(SyntheticNotes.copyOf(summary));
+        }
+    }
+
+    @Benchmark
+    public int sameContentsByVersion() {
+        int same = 0;
+        for (int i = 0; i < notes; i++) {
+            NoteSummary oldItem = oldList.get(i);
+            NoteSummary newItem = newList.get(i);
+            if (NoteDiff.sameItem(oldItem, newItem) && NoteDiff.sameContents(oldItem, newItem)) {
+                same++;
+            }
+        }
+        return same;
+    }
+
+    @Benchmark
+    public int sameContentsByText() {
+        int same = 0;
+        for (int i = 0; i < notes; i++) {
+            NoteSummary oldItem = oldList.get(i);
+            NoteSummary newItem = newList.get(i);
+            if (NoteDiff.sameItem(oldItem, newItem)
+                    && oldItem.getTitle().equals(newItem.getTitle())
+                    && oldItem.getDescriptionPreview().equals(newItem.getDescriptionPreview())
+                    && oldItem.getPriority() == newItem.getPriority()) {
+                same++;
+            }
+        }
+        return same;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.architecturecomponents.benchmark;
+
+import com.example.architecturecomponents.NoteMatch;
+import com.example.architecturecomponents.NoteSearchQuery;
+import com.example.architecturecomponents.NoteSearchRanker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cost of turning search text into an FTS expression, and of ranking (scoring and sorting) a set of FTS
+// hits the size of the note table.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NoteSearchBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int notes;
+
+    private List<NoteMatch> matches;
+    private List<String> searchTexts;
+
+    @Setup
+    public void setUp() {
+        matches = SyntheticNotes.matches(notes, 2);
+        searchTexts = SyntheticNotes.searchTexts(notes);
+    }
+
+    @Benchmark
+    public int[] rank() {
+        return NoteSearchRanker.rank(matches);
+    }
+
+    @Benchmark
+    public int matchExpressions() {
+        int length = 0;
+        for (String text : searchTexts) {
+            length += NoteSearchQuery.toMatchExpression(text).length();
+        }
+        return length;
+    }
+}
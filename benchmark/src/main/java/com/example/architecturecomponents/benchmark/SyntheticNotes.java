@@ -0,0 +1,104 @@
+package com.example.architecturecomponents.benchmark;
+
+import com.example.architecturecomponents.Note;
+import com.example.architecturecomponents.NoteMatch;
+import com.example.architecturecomponents.NoteSummary;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Builds the same notes on every run from a fixed seed, so results from different runs can be compared.
+final class SyntheticNotes {
+    private static final long SEED = 42;
+
+    private static final String[] WORDS = {
+            "shopping", "list", "meeting", "notes", "call", "dentist", "project", "deadline", "ideas",
+            "holiday", "budget", "recipe", "bread", "garden", "birthday", "present", "book", "review",
+            "car", "service", "invoice", "client", "weekly", "plan", "gym", "read", "write", "fix", "bug"
+    };
+
+    // Notes with titles of 2-6 words, descriptions of 5-100 words and priorities 1-10.
+    static List<Note> notes(int count) {
+        Random random = new Random(SEED);
+        List<Note> notes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Note note = new Note(text(random, 2, 6), text(random, 5, 100), 1 + random.nextInt(10));
+            note.setId(i + 1);
+            note.setUpdatedAt(1000L + i);
+            note.setCreatedAt(1000L + i);
+            notes.add(note);
+        }
+        return notes;
+    }
+
+    // Summaries of the same notes, as the list would load them.
+    static List<NoteSummary> summaries(int count) {
+        List<NoteSummary> summaries = new ArrayList<>(count);
+        for (Note note : notes(count)) {
+            summaries.add(summaryOf(note));
+        }
+        return summaries;
+    }
+
+    // A fresh copy of a summary, the way the list gets new objects after every reload.
+    static NoteSummary copyOf(NoteSummary summary) {
+        return new NoteSummary(summary.getId(), new String(summary.getTitle()),
+                new String(summary.getDescriptionPreview()), summary.getPriority(), summary.getUpdatedAt(),
+                summary.getCreatedAt());
+    }
+
+    // FTS matches for a search of the given phrases over two columns, with random hit counts.
+    static List<NoteMatch> matches(int count, int phrases) {
+        Random random = new Random(SEED);
+        int columns = 2;
+        List<NoteMatch> matches = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ByteBuffer buffer = ByteBuffer.allocate(4 * (2 + 3 * phrases * columns)).order(ByteOrder.nativeOrder());
+            buffer.putInt(phrases).putInt(columns);
+            for (int p = 0; p < phrases * columns; p++) {
+                buffer.putInt(random.nextInt(4)).putInt(count).putInt(count / 2);
+            }
+            NoteMatch match = new NoteMatch();
+            match.id = i + 1;
+            match.matchInfo = buffer.array();
+            matches.add(match);
+        }
+        return matches;
+    }
+
+    // Search box text of 1-3 words with some punctuation.
+    static List<String> searchTexts(int count) {
+        Random random = new Random(SEED);
+        List<String> texts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            texts.add("  " + text(random, 1, 3).replace(' ', random.nextBoolean() ? ',' : ' ') + "?");
+        }
+        return texts;
+    }
+
+    private static NoteSummary summaryOf(Note note) {
+        String description = note.getDescription();
+        String preview = description.length() > NoteSummary.PREVIEW_LENGTH
+                ? description.substring(0, NoteSummary.PREVIEW_LENGTH) : description;
+        return new NoteSummary(note.getId(), note.getTitle(), preview, note.getPriority(), note.getUpdatedAt(),
+                note.getCreatedAt());
+    }
+
+    private static String text(Random random, int minWords, int maxWords) {
+        int words = minWords + random.nextInt(maxWords - minWords + 1);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    private SyntheticNotes() {
+    }
+}